@@ -0,0 +1,95 @@
+package com.example.activity.config;
+
+import com.example.activity.history.AsyncHistoryManager;
+import com.example.activity.history.AsyncHistoryWriter;
+import com.example.activity.job.LaneAsyncJobExecutor;
+import com.example.activity.metrics.CommandMetricsInterceptor;
+import com.example.activity.metrics.EngineMetrics;
+import com.example.activity.variable.CandidateListType;
+import org.activiti.engine.impl.history.HistoryLevel;
+import org.activiti.engine.impl.interceptor.CommandInterceptor;
+import org.activiti.engine.impl.variable.VariableType;
+import org.activiti.spring.SpringProcessEngineConfiguration;
+import org.activiti.spring.boot.ProcessEngineConfigurationConfigurer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 流程引擎的扩展配置
+ */
+@Configuration
+public class ActivitiEngineConfig {
+
+    /**
+     * 引擎的自动配置只注入一个ProcessEngineConfigurationConfigurer，所有扩展都在这里依次应用
+     */
+    @Bean
+    public ProcessEngineConfigurationConfigurer processEngineConfigurationConfigurer(EngineMetrics engineMetrics,
+                                                                                     AsyncExecutorProperties asyncExecutorProperties,
+                                                                                     EngineTuningProperties engineTuningProperties,
+                                                                                     JdbcTemplate jdbcTemplate,
+                                                                                     ObjectProvider<AsyncHistoryWriter> asyncHistoryWriter) {
+        return configuration -> {
+            registerVariableTypes(configuration);
+            applyAsyncHistory(configuration, asyncHistoryWriter.getIfAvailable());
+            registerCommandInterceptors(configuration, engineMetrics);
+            applyAsyncExecutor(configuration, asyncExecutorProperties, engineMetrics, jdbcTemplate);
+            applyBulkInsert(configuration, engineTuningProperties);
+        };
+    }
+
+    /**
+     * 注册自定义变量类型，放在引擎内置类型之前，避免CandidateList被当作Serializable序列化保存
+     */
+    private void registerVariableTypes(SpringProcessEngineConfiguration configuration) {
+        List<VariableType> types = configuration.getCustomPreVariableTypes() == null
+                ? new ArrayList<>() : new ArrayList<>(configuration.getCustomPreVariableTypes());
+        types.add(new CandidateListType());
+        configuration.setCustomPreVariableTypes(types);
+    }
+
+    /**
+     * demo.history.async.enabled为true时，流程、活动、任务实例和候选人历史改为事务提交后由AsyncHistoryWriter写入
+     */
+    private void applyAsyncHistory(SpringProcessEngineConfiguration configuration, AsyncHistoryWriter writer) {
+        if (writer != null) {
+            HistoryLevel historyLevel = configuration.getHistoryLevel() != null
+                    ? configuration.getHistoryLevel() : HistoryLevel.getHistoryLevelForKey(configuration.getHistory());
+            configuration.setHistoryManager(new AsyncHistoryManager(configuration, historyLevel, writer));
+        }
+    }
+
+    /**
+     * 记录引擎命令的耗时和SQL语句数
+     */
+    private void registerCommandInterceptors(SpringProcessEngineConfiguration configuration, EngineMetrics engineMetrics) {
+        List<CommandInterceptor> interceptors = configuration.getCustomPreCommandInterceptors() == null
+                ? new ArrayList<>() : new ArrayList<>(configuration.getCustomPreCommandInterceptors());
+        interceptors.add(new CommandMetricsInterceptor(engineMetrics));
+        configuration.setCustomPreCommandInterceptors(interceptors);
+    }
+
+    /**
+     * 替换引擎默认的异步任务执行器，按流程key分队列获取和执行
+     */
+    private void applyAsyncExecutor(SpringProcessEngineConfiguration configuration, AsyncExecutorProperties properties,
+                                    EngineMetrics engineMetrics, JdbcTemplate jdbcTemplate) {
+        if (properties.isEnabled()) {
+            configuration.setAsyncExecutor(new LaneAsyncJobExecutor(properties, engineMetrics, jdbcTemplate));
+        }
+    }
+
+    /**
+     * 提交时的多行insert；更新和删除仍逐条执行，
+     * mybatis的BATCH执行器拿不到每条update的影响行数，会使基于版本号的乐观锁失效，因此不启用
+     */
+    private void applyBulkInsert(SpringProcessEngineConfiguration configuration, EngineTuningProperties properties) {
+        configuration.setBulkInsertEnabled(properties.isBulkInsertEnabled());
+        configuration.setMaxNrOfStatementsInBulkInsert(properties.getMaxStatementsInBulkInsert());
+    }
+}
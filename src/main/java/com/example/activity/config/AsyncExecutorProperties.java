@@ -0,0 +1,84 @@
+package com.example.activity.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 异步任务执行器配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "demo.async-executor")
+public class AsyncExecutorProperties {
+
+    /**
+     * 是否使用按流程key分队列的执行器，关闭时使用引擎默认的执行器
+     */
+    private boolean enabled = true;
+
+    /**
+     * 每个执行队列一次获取并锁定的异步任务数
+     */
+    private int lockSize = 10;
+
+    /**
+     * 一次获取的到期定时任务数
+     */
+    private int timerLockSize = 10;
+
+    /**
+     * 异步任务锁定时间(毫秒)，超时未执行完的任务会被重新获取
+     */
+    private int asyncJobLockTimeMillis = 300000;
+
+    private int timerLockTimeMillis = 300000;
+
+    /**
+     * 没有更多任务时，下次获取前的等待时间(毫秒)
+     */
+    private int acquireWaitTimeMillis = 10000;
+
+    private int timerAcquireWaitTimeMillis = 10000;
+
+    /**
+     * 执行队列已满时，该队列下次获取前的等待时间(毫秒)
+     */
+    private int queueFullWaitTimeMillis = 1000;
+
+    /**
+     * 获取任务时发生乐观锁冲突后的重试等待时间(毫秒)
+     */
+    private int retryWaitTimeMillis = 500;
+
+    /**
+     * 未分配到其他队列的流程使用的队列
+     */
+    private Lane defaultLane = new Lane();
+
+    /**
+     * 按名称配置的执行队列
+     */
+    private Map<String, Lane> lanes = new LinkedHashMap<>();
+
+    @Data
+    public static class Lane {
+
+        /**
+         * 使用该队列的流程key
+         */
+        private List<String> processKeys = new ArrayList<>();
+
+        private int threads = 4;
+
+        /**
+         * 等待执行的任务数上限
+         */
+        private int queueSize = 100;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.activity.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 异步历史写入配置：流程、活动、任务实例和候选人历史在事务提交后由后台线程批量写入ACT_HI_*
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "demo.history.async")
+public class AsyncHistoryProperties {
+
+    public enum Durability {
+        /**
+         * 只保存在内存队列中，进程异常退出时未写入的变化会丢失
+         */
+        NONE,
+        /**
+         * 后台线程写库前先把一批变化追加到本地预写日志并刷盘，写库失败或进程退出后启动时重放；
+         * 事务提交后还在内存队列中的变化仍会随进程退出丢失
+         */
+        WAL
+    }
+
+    private boolean enabled = false;
+
+    /**
+     * 内存队列容量，队列满时由提交事务的线程直接写库
+     */
+    private int capacity = 10000;
+
+    /**
+     * 每次批量写入的最大变化数
+     */
+    private int batchSize = 200;
+
+    /**
+     * 队列不满一批时的最长等待时间(毫秒)
+     */
+    private long flushIntervalMillis = 200;
+
+    private Durability durability = Durability.NONE;
+
+    /**
+     * 预写日志文件
+     */
+    private String walPath = "data/history-wal.log";
+
+    /**
+     * 更新找不到对应行时保留重试的时间(毫秒)，插入可能还在其他节点的队列中
+     */
+    private long unmatchedRetentionMillis = 600000;
+}
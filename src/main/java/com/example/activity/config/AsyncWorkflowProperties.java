@@ -0,0 +1,29 @@
+package com.example.activity.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 异步流程调用配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "demo.async-workflow")
+public class AsyncWorkflowProperties {
+
+    /**
+     * 平台线程池的线程数，使用虚拟线程时不生效
+     */
+    private int threads = 32;
+
+    /**
+     * JDK21及以上使用虚拟线程，低版本JDK自动退回平台线程池
+     */
+    private boolean virtualThreads = false;
+
+    /**
+     * 同时访问数据库的调用数上限，0表示连接池的最大连接数减去常驻后台线程(异步任务执行器、历史写入)占用的连接数
+     */
+    private int maxDbConcurrency = 0;
+}
@@ -0,0 +1,29 @@
+package com.example.activity.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 批量审批配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "demo.batch-approval")
+public class BatchApprovalProperties {
+
+    /**
+     * 每个事务处理的任务数
+     */
+    private int chunkSize = 20;
+
+    /**
+     * 并发处理的线程数，不要超过数据库连接池大小
+     */
+    private int threads = 4;
+
+    /**
+     * 等待处理的批次数上限，超过后由提交线程自己执行
+     */
+    private int queueCapacity = 100;
+}
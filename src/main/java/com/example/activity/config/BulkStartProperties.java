@@ -0,0 +1,29 @@
+package com.example.activity.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 批量启动流程配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "demo.bulk-start")
+public class BulkStartProperties {
+
+    /**
+     * 每个事务启动的流程实例数
+     */
+    private int batchSize = 50;
+
+    /**
+     * 并发启动的线程数，不要超过数据库连接池大小
+     */
+    private int threads = 4;
+
+    /**
+     * 已读取但未完成的批次数上限，达到后暂停读取记录
+     */
+    private int maxPendingBatches = 8;
+}
@@ -0,0 +1,34 @@
+package com.example.activity.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 任务候选人规则表：流程key + 任务节点id -> 候选人/候选组
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "demo.candidate")
+public class CandidateRuleProperties {
+
+    private List<Rule> rules = new ArrayList<>();
+
+    @Data
+    public static class Rule {
+
+        private String processKey;
+
+        /**
+         * 任务节点id，*表示流程内的所有任务节点
+         */
+        private String taskDefinitionKey = "*";
+
+        private List<String> users = new ArrayList<>();
+
+        private List<String> groups = new ArrayList<>();
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.activity.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 多节点拾取任务的配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "demo.claim")
+public class ClaimProperties {
+
+    /**
+     * 共享同一数据库的拾取方总数，待办按任务id的哈希分成这么多份；
+     * 静态配置，增减节点时所有节点都要修改，同一节点的工作线程共用本节点的分片
+     */
+    private int shardCount = 1;
+
+    /**
+     * 本节点负责的分片，从0开始
+     */
+    private int shardIndex = 0;
+
+    /**
+     * 本分片的任务都没有拾取成功时，是否从其他分片拾取
+     */
+    private boolean stealWhenIdle = true;
+
+    /**
+     * 查找可拾取任务时最多读取的待办页数
+     */
+    private int scanPages = 5;
+
+    private int pageSize = 50;
+
+    /**
+     * 拾取指定任务时乐观锁冲突的最大尝试次数，拾取下一个任务时冲突直接换下一个任务
+     */
+    private int maxAttempts = 4;
+
+    /**
+     * 第一次重试的退避上限(毫秒)，之后每次加倍，实际等待时间在0到上限之间随机
+     */
+    private long backoffMillis = 20;
+
+    private long maxBackoffMillis = 500;
+}
@@ -0,0 +1,111 @@
+package com.example.activity.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/**
+ * 启动后检查连接池大小是否足够后台线程并发使用
+ * 常驻后台线程(异步任务执行器、历史写入)一直在取连接，按需运行的线程(导出、批量审批、批量启动)只在有任务时占用连接，
+ * 启动时的部署线程不计入；同时占用的连接数接近或超过连接池大小时，请求线程获取连接需要排队，直到connection-timeout超时
+ */
+@Slf4j
+@Component
+public class ConnectionPoolSizeCheck {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private AsyncExecutorProperties asyncExecutorProperties;
+
+    @Autowired
+    private AsyncHistoryProperties asyncHistoryProperties;
+
+    @Autowired
+    private AsyncWorkflowProperties asyncWorkflowProperties;
+
+    @Autowired
+    private BatchApprovalProperties batchApprovalProperties;
+
+    @Autowired
+    private BulkStartProperties bulkStartProperties;
+
+    @Value("${spring.activiti.async-executor-activate:false}")
+    private boolean asyncExecutorActivate;
+
+    @Value("${demo.history-export.threads:2}")
+    private int historyExportThreads;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void check() {
+        HikariDataSource hikari = hikari();
+        if (hikari == null) {
+            return;
+        }
+        int poolSize = hikari.getMaximumPoolSize();
+        int background = backgroundConnections();
+        int onDemand = onDemandConnections();
+        int asyncWorkflow = asyncWorkflowProperties.getMaxDbConcurrency() > 0
+                ? asyncWorkflowProperties.getMaxDbConcurrency() : Math.max(1, poolSize - background);
+        if (background >= poolSize) {
+            log.warn("> Connection pool {} has {} connections but background workers may use {}, "
+                    + "increase spring.datasource.hikari.maximum-pool-size", hikari.getPoolName(), poolSize, background);
+        } else if (asyncWorkflow + background + onDemand > poolSize) {
+            log.info("> Connection pool {}: {} connections, up to {} used by background workers and {} by exports "
+                    + "and batch jobs while they run, async workflow calls limited to {} may wait for connections",
+                    hikari.getPoolName(), poolSize, background, onDemand, asyncWorkflow);
+        } else {
+            log.info("> Connection pool {}: {} connections, up to {} used by background workers and {} by exports "
+                    + "and batch jobs while they run", hikari.getPoolName(), poolSize, background, onDemand);
+        }
+    }
+
+    /**
+     * 常驻后台线程一直占用的连接数：异步任务执行器和历史写入线程
+     */
+    public int backgroundConnections() {
+        return jobThreads() + (asyncHistoryProperties.isEnabled() ? 1 : 0);
+    }
+
+    /**
+     * 按需运行的线程在运行时最多占用的连接数：历史导出、批量审批和批量启动，空闲时不占用连接
+     */
+    public int onDemandConnections() {
+        return historyExportThreads + batchApprovalProperties.getThreads() + bulkStartProperties.getThreads();
+    }
+
+    /**
+     * 异步任务执行器的执行线程和每个队列的获取线程，执行器未启动时为0
+     */
+    private int jobThreads() {
+        if (!asyncExecutorActivate || !asyncExecutorProperties.isEnabled()) {
+            return 0;
+        }
+        int threads = asyncExecutorProperties.getDefaultLane().getThreads() + 1;
+        for (AsyncExecutorProperties.Lane lane : asyncExecutorProperties.getLanes().values()) {
+            if (!lane.getProcessKeys().isEmpty()) {
+                threads += lane.getThreads() + 1;
+            }
+        }
+        return threads;
+    }
+
+    private HikariDataSource hikari() {
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                return dataSource.unwrap(HikariDataSource.class);
+            }
+        } catch (SQLException e) {
+            log.warn("> Cannot read connection pool size", e);
+        }
+        return null;
+    }
+}
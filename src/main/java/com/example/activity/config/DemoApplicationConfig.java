@@ -1,18 +1,16 @@
 package com.example.activity.config;
 
+import com.example.activity.identity.ObservableUserDetailsManager;
+import com.example.activity.identity.UserProvisioner;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.core.userdetails.User;
+import org.springframework.core.io.Resource;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
 import org.springframework.security.crypto.password.PasswordEncoder;
-import org.springframework.security.provisioning.InMemoryUserDetailsManager;
-
-import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * 设置用户和角色
@@ -21,37 +19,40 @@ import java.util.stream.Collectors;
 @Configuration
 public class DemoApplicationConfig {
 
+    /**
+     * 用户文件，每行：用户名,密码,角色和组...
+     */
+    @Value("${demo.identity.users-location:classpath:identity/users.csv}")
+    private Resource usersLocation;
+
+    /**
+     * 加密明文密码的线程数，默认为CPU核数
+     */
+    @Value("${demo.identity.hash-threads:0}")
+    private int hashThreads;
+
     /**
      * 添加Security的用户
      * @return
      */
     @Bean
     public UserDetailsService myUserDetailsService(){
-//        把用户存储在内存中
-        InMemoryUserDetailsManager inMemoryUserDetailsManager = new InMemoryUserDetailsManager();
-//        构造用户的信息
-        String[][] usersGroupAndRoles= {
-                {"jack","password","ROLE_ACTIVITI_USER"},
-                {"rose","password","ROLE_ACTIVITI_USER","GROUP_activitiTeam"},
-                {"tom","password","ROLE_ACTIVITI_USER","GROUP_activitiTeam"}
-        };
-
-        for (String[] users : usersGroupAndRoles) {
-//            用户的角色和组
-            List<String> authStrList = Arrays.asList(Arrays.copyOfRange(users, 2, users.length));
-
-            log.info("> Registering new user: {} with the following Authorities[{}]",users[0],authStrList);
-
-            inMemoryUserDetailsManager.createUser(new User(users[0],
-                    passwordEncoder().encode(users[1]),
-                    authStrList.stream().map(str -> new SimpleGrantedAuthority(str)).collect(Collectors.toList())));
+//        把用户存储在内存中，用户变更时通知SecurityUtil等缓存失效
+        ObservableUserDetailsManager inMemoryUserDetailsManager = new ObservableUserDetailsManager();
+//        从用户文件构造用户的信息，明文密码并行加密
+        int threads = hashThreads > 0 ? hashThreads : Runtime.getRuntime().availableProcessors();
+        for (UserDetails user : new UserProvisioner(passwordEncoder(), threads).load(usersLocation)) {
+            inMemoryUserDetailsManager.createUser(user);
         }
         return inMemoryUserDetailsManager;
 
     }
 
+    /**
+     * 默认使用bcrypt加密，同时可以识别{bcrypt}等带前缀的已加密密码
+     */
     @Bean
     public PasswordEncoder passwordEncoder(){
-        return new BCryptPasswordEncoder();
+        return PasswordEncoderFactories.createDelegatingPasswordEncoder();
     }
 }
@@ -0,0 +1,24 @@
+package com.example.activity.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 引擎写库相关的配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "demo.engine")
+public class EngineTuningProperties {
+
+    /**
+     * 提交时同一张表的多条insert合并为一条多行insert
+     */
+    private boolean bulkInsertEnabled = true;
+
+    /**
+     * 一条多行insert最多包含的行数
+     */
+    private int maxStatementsInBulkInsert = 100;
+}
@@ -0,0 +1,49 @@
+package com.example.activity.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 历史数据归档配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "demo.history-archive")
+public class HistoryArchiveProperties {
+
+    /**
+     * 是否定时归档，关闭时仍可手动调用归档和查询已归档的数据
+     */
+    private boolean enabled = false;
+
+    /**
+     * 归档文件目录，只有一个节点可以归档，归档数据也只在这个节点上可查
+     */
+    private String dir = "data/history-archive";
+
+    /**
+     * 归档方的节点标识，为空时使用主机名；与目录一起记录在ACT_GE_PROPERTY中，其他节点不能再归档
+     */
+    private String nodeId;
+
+    /**
+     * 流程结束超过多少天后归档
+     */
+    private int minAgeDays = 90;
+
+    /**
+     * 每批归档的流程实例数，一批写入并刷盘后再从数据库删除
+     */
+    private int batchSize = 100;
+
+    /**
+     * 单个段文件的大小上限(MB)，超过后新建段文件
+     */
+    private int segmentSizeMb = 256;
+
+    /**
+     * 定时归档的间隔(毫秒)
+     */
+    private long intervalMillis = 3600000;
+}
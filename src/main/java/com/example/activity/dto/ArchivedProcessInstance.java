@@ -0,0 +1,130 @@
+package com.example.activity.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 一个已结束流程实例的完整历史：流程实例、节点、任务、变量和批注
+ * 既用于写入归档文件，也作为热数据和归档数据的统一查询结果
+ */
+@Data
+public class ArchivedProcessInstance {
+
+    private String processInstanceId;
+
+    private String businessKey;
+
+    private String processDefinitionId;
+
+    private String processDefinitionKey;
+
+    private String startUserId;
+
+    private Date startTime;
+
+    private Date endTime;
+
+    private String deleteReason;
+
+    /**
+     * 数据来自归档文件时为true，来自ACT_HI_*表时为false
+     */
+    private boolean archived;
+
+    private List<Activity> activities = new ArrayList<>();
+
+    private List<Task> tasks = new ArrayList<>();
+
+    private List<Variable> variables = new ArrayList<>();
+
+    private List<Comment> comments = new ArrayList<>();
+
+    @Data
+    public static class Activity {
+
+        private String activityId;
+
+        private String activityName;
+
+        private String activityType;
+
+        private String taskId;
+
+        private String assignee;
+
+        private Date startTime;
+
+        private Date endTime;
+    }
+
+    @Data
+    public static class Task {
+
+        private String taskId;
+
+        private String taskName;
+
+        private String taskDefinitionKey;
+
+        private String assignee;
+
+        private String owner;
+
+        private Date startTime;
+
+        private Date claimTime;
+
+        private Date endTime;
+
+        private String deleteReason;
+    }
+
+    @Data
+    public static class Variable {
+
+        private String name;
+
+        /**
+         * 引擎中的变量类型，如string、long、candidateList
+         */
+        private String type;
+
+        private String taskId;
+
+        /**
+         * 变量值的文本形式，只用于展示
+         */
+        private String value;
+
+        /**
+         * 以下是引擎保存变量值的原始字段，按type对应的变量类型可还原出原来的值，见HistoryArchiver#variableValue
+         */
+        private String textValue;
+
+        private String textValue2;
+
+        private Long longValue;
+
+        private Double doubleValue;
+
+        /**
+         * 序列化对象、字节数组和长json等保存在ACT_GE_BYTEARRAY中的值
+         */
+        private byte[] bytes;
+    }
+
+    @Data
+    public static class Comment {
+
+        private String taskId;
+
+        private String userId;
+
+        private Date time;
+
+        private String message;
+    }
+}
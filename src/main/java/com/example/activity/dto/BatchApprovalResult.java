@@ -0,0 +1,26 @@
+package com.example.activity.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量审批结果，failures为 任务id -> 失败原因
+ */
+@Data
+public class BatchApprovalResult {
+
+    private List<String> completed = new ArrayList<>();
+
+    private Map<String, String> failures = new LinkedHashMap<>();
+
+    private long elapsedMillis;
+
+    public void merge(BatchApprovalResult other) {
+        completed.addAll(other.getCompleted());
+        failures.putAll(other.getFailures());
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.activity.dto;
+
+import lombok.Data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 批量启动流程的结果，failures为 业务key -> 失败原因
+ */
+@Data
+public class BulkStartReport {
+
+    private String processDefinitionId;
+
+    private long started;
+
+    private Map<String, String> failures = new LinkedHashMap<>();
+
+    private long elapsedMillis;
+
+    /**
+     * 每秒启动的流程实例数
+     */
+    public double getInstancesPerSecond() {
+        return elapsedMillis == 0 ? started : started * 1000.0 / elapsedMillis;
+    }
+}
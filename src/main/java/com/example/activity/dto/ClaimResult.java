@@ -0,0 +1,50 @@
+package com.example.activity.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 一次拾取的结果
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClaimResult {
+
+    public enum Status {
+        CLAIMED,
+        /**
+         * 已被其他用户拾取
+         */
+        ALREADY_CLAIMED,
+        /**
+         * 任务已完成或删除
+         */
+        NOT_FOUND,
+        /**
+         * 当前用户不是任务的候选人，所在组也不是候选组
+         */
+        NOT_CANDIDATE,
+        /**
+         * 重试后仍有乐观锁冲突
+         */
+        CONFLICT,
+        /**
+         * 没有可拾取的任务
+         */
+        NONE_AVAILABLE
+    }
+
+    private Status status;
+
+    /**
+     * 拾取的任务，NONE_AVAILABLE时为null
+     */
+    private String taskId;
+
+    /**
+     * 拾取尝试次数，包括乐观锁冲突后的重试；没有候选资格时为0
+     */
+    private int attempts;
+}
@@ -0,0 +1,39 @@
+package com.example.activity.dto;
+
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 已办任务视图：历史任务 + 所属历史流程实例的业务字段
+ */
+@Data
+public class DoneTask {
+
+    private String taskId;
+
+    private String taskName;
+
+    private String assignee;
+
+    private Date taskEndTime;
+
+    private String processInstanceId;
+
+    private String processDefinitionId;
+
+    /**
+     * 流程的业务key
+     */
+    private String businessKey;
+
+    /**
+     * 流程开始时间
+     */
+    private Date processStartTime;
+
+    /**
+     * 流程结束时间，流程未结束时为null
+     */
+    private Date processEndTime;
+}
@@ -0,0 +1,31 @@
+package com.example.activity.dto;
+
+import lombok.Data;
+
+/**
+ * 一个流程的历史导出结果
+ */
+@Data
+public class HistoryExportResult {
+
+    private String processDefinitionKey;
+
+    private String file;
+
+    /**
+     * 本次导出的行数，不含断点之前已导出的行
+     */
+    private long exportedRows;
+
+    /**
+     * 文件中的总行数
+     */
+    private long totalRows;
+
+    private long elapsedMillis;
+
+    /**
+     * 失败原因，成功时为null，可再次调用从断点继续
+     */
+    private String error;
+}
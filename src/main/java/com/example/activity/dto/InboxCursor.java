@@ -0,0 +1,20 @@
+package com.example.activity.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * 游标分页的位置：上一页最后一条任务的创建时间和任务id
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InboxCursor {
+
+    private Date createTime;
+
+    private String taskId;
+}
@@ -0,0 +1,20 @@
+package com.example.activity.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 待办任务的一页数据，next为null时表示没有下一页
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InboxPage {
+
+    private List<InboxTask> content;
+
+    private InboxCursor next;
+}
@@ -0,0 +1,36 @@
+package com.example.activity.dto;
+
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 待办任务视图：任务信息 + 所属流程实例的业务字段
+ */
+@Data
+public class InboxTask {
+
+    private String taskId;
+
+    private String taskName;
+
+    private String taskDefinitionKey;
+
+    private String assignee;
+
+    private Date createTime;
+
+    private String processInstanceId;
+
+    private String processDefinitionId;
+
+    /**
+     * 流程的业务key
+     */
+    private String businessKey;
+
+    /**
+     * 流程开始时间
+     */
+    private Date processStartTime;
+}
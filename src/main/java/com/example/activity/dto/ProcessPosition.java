@@ -0,0 +1,39 @@
+package com.example.activity.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 业务记录对应的运行中流程实例及其当前任务
+ */
+@Data
+public class ProcessPosition {
+
+    private String businessKey;
+
+    private String processInstanceId;
+
+    private String processDefinitionId;
+
+    /**
+     * 当前的任务，并行分支时有多个
+     */
+    private List<CurrentTask> tasks = new ArrayList<>();
+
+    @Data
+    public static class CurrentTask {
+
+        private String taskId;
+
+        private String taskName;
+
+        private String taskDefinitionKey;
+
+        /**
+         * 办理人，未拾取时为null
+         */
+        private String assignee;
+    }
+}
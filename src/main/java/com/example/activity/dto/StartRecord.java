@@ -0,0 +1,23 @@
+package com.example.activity.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * 批量启动流程的一条记录
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StartRecord {
+
+    /**
+     * 流程的业务key，关联自身的业务表
+     */
+    private String businessKey;
+
+    private Map<String, Object> variables;
+}
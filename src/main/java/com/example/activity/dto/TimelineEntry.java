@@ -0,0 +1,34 @@
+package com.example.activity.dto;
+
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 审批时间线上的一个节点
+ */
+@Data
+public class TimelineEntry {
+
+    private String activityId;
+
+    private String activityName;
+
+    /**
+     * 节点类型，如startEvent、userTask、endEvent
+     */
+    private String activityType;
+
+    private String taskId;
+
+    private String assignee;
+
+    private Date startTime;
+
+    private Date endTime;
+
+    /**
+     * 任务的批注，没有批注时为null
+     */
+    private String comment;
+}
@@ -0,0 +1,245 @@
+package com.example.activity.history;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * 归档段文件，只追加写入，读取时使用内存映射
+ * 每条记录：记录头(流程实例id长度、业务key长度(null为-1)、内容长度、内容的crc32，各4字节) + 流程实例id + 业务key + 内容；
+ * 打开时扫描各段的记录头重建索引，最后一个段末尾写了一半的记录会被截掉
+ * 调用方负责写入的并发控制，读取可以并发
+ */
+@Slf4j
+class ArchiveSegmentStore implements AutoCloseable {
+
+    private static final int HEADER_SIZE = 16;
+
+    private static final String PREFIX = "segment-";
+
+    private static final String SUFFIX = ".seg";
+
+    /**
+     * 记录内容在段文件中的位置
+     */
+    static final class Location {
+
+        final int segment;
+
+        final long offset;
+
+        final int length;
+
+        Location(int segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    interface IndexVisitor {
+
+        void accept(String processInstanceId, String businessKey, Location location);
+    }
+
+    private final Path dir;
+
+    private final long segmentSize;
+
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+
+    ArchiveSegmentStore(Path dir, long segmentSize, IndexVisitor visitor) {
+        this.dir = dir;
+        this.segmentSize = Math.min(segmentSize, Integer.MAX_VALUE);
+        try {
+            Files.createDirectories(dir);
+            List<Path> paths = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+                stream.forEach(paths::add);
+            }
+            // 文件名中的序号是定长的，按文件名排序即按写入顺序
+            paths.sort(null);
+            for (int i = 0; i < paths.size(); i++) {
+                Segment segment = new Segment(paths.get(i));
+                segments.add(segment);
+                scan(i, segment, i == paths.size() - 1, visitor);
+            }
+            if (segments.isEmpty()) {
+                segments.add(new Segment(segmentPath(0)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open history archive " + dir, e);
+        }
+    }
+
+    /**
+     * 追加一批记录并刷盘，返回每条记录内容的位置
+     */
+    List<Location> append(List<String> processInstanceIds, List<String> businessKeys, List<byte[]> bodies) {
+        List<Location> locations = new ArrayList<>(bodies.size());
+        try {
+            for (int i = 0; i < bodies.size(); i++) {
+                Segment active = segments.get(segments.size() - 1);
+                if (active.channel.size() >= segmentSize) {
+                    active.channel.force(false);
+                    active = new Segment(segmentPath(segments.size()));
+                    segments.add(active);
+                }
+                byte[] id = processInstanceIds.get(i).getBytes(StandardCharsets.UTF_8);
+                byte[] businessKey = businessKeys.get(i) == null ? null : businessKeys.get(i).getBytes(StandardCharsets.UTF_8);
+                byte[] body = bodies.get(i);
+                CRC32 crc = new CRC32();
+                crc.update(body);
+
+                int businessKeyLength = businessKey == null ? 0 : businessKey.length;
+                ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + id.length + businessKeyLength + body.length);
+                buffer.putInt(id.length)
+                        .putInt(businessKey == null ? -1 : businessKey.length)
+                        .putInt(body.length)
+                        .putInt((int) crc.getValue())
+                        .put(id);
+                if (businessKey != null) {
+                    buffer.put(businessKey);
+                }
+                buffer.put(body);
+                buffer.flip();
+
+                long position = active.channel.size();
+                long writePosition = position;
+                while (buffer.hasRemaining()) {
+                    writePosition += active.channel.write(buffer, writePosition);
+                }
+                locations.add(new Location(segments.size() - 1,
+                        position + HEADER_SIZE + id.length + businessKeyLength, body.length));
+            }
+            segments.get(segments.size() - 1).channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot append to history archive " + dir, e);
+        }
+        return locations;
+    }
+
+    byte[] read(Location location) {
+        ByteBuffer buffer = segments.get(location.segment).slice(location.offset, location.length);
+        byte[] body = new byte[location.length];
+        buffer.get(body);
+        return body;
+    }
+
+    @Override
+    public void close() {
+        for (Segment segment : segments) {
+            try {
+                segment.channel.close();
+            } catch (IOException e) {
+                log.warn("> Cannot close archive segment {}", segment.path, e);
+            }
+        }
+    }
+
+    private void scan(int index, Segment segment, boolean last, IndexVisitor visitor) throws IOException {
+        long size = segment.channel.size();
+        long offset = 0;
+        while (size - offset >= HEADER_SIZE) {
+            ByteBuffer header = segment.slice(offset, HEADER_SIZE);
+            int idLength = header.getInt();
+            int businessKeyLength = header.getInt();
+            int bodyLength = header.getInt();
+            int checksum = header.getInt();
+            if (idLength <= 0 || businessKeyLength < -1 || bodyLength < 0) {
+                break;
+            }
+            long bodyOffset = offset + HEADER_SIZE + idLength + Math.max(businessKeyLength, 0);
+            if (bodyOffset + bodyLength > size) {
+                break;
+            }
+            ByteBuffer record = segment.slice(offset + HEADER_SIZE, (int) (bodyOffset + bodyLength - offset - HEADER_SIZE));
+            byte[] id = new byte[idLength];
+            record.get(id);
+            byte[] businessKey = null;
+            if (businessKeyLength >= 0) {
+                businessKey = new byte[businessKeyLength];
+                record.get(businessKey);
+            }
+            byte[] body = new byte[bodyLength];
+            record.get(body);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            visitor.accept(new String(id, StandardCharsets.UTF_8),
+                    businessKey == null ? null : new String(businessKey, StandardCharsets.UTF_8),
+                    new Location(index, bodyOffset, bodyLength));
+            offset = bodyOffset + bodyLength;
+        }
+        if (offset < size) {
+            if (last) {
+                log.warn("> Truncate incomplete archive record at {} of {}", offset, segment.path);
+                segment.truncate(offset);
+            } else {
+                log.warn("> Skip unreadable archive records from {} of {}", offset, segment.path);
+            }
+        }
+    }
+
+    private Path segmentPath(int index) {
+        return dir.resolve(String.format("%s%06d%s", PREFIX, index, SUFFIX));
+    }
+
+    private static final class Segment {
+
+        private final Path path;
+
+        private final FileChannel channel;
+
+        private volatile MappedByteBuffer map;
+
+        Segment(Path path) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        /**
+         * 返回文件中一段区域的只读视图，写入新记录后按需重新映射整个文件
+         */
+        ByteBuffer slice(long offset, int length) {
+            MappedByteBuffer current = map;
+            if (current == null || offset + length > current.capacity()) {
+                synchronized (this) {
+                    current = map;
+                    if (current == null || offset + length > current.capacity()) {
+                        try {
+                            current = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                        } catch (IOException e) {
+                            throw new UncheckedIOException("Cannot map archive segment " + path, e);
+                        }
+                        map = current;
+                    }
+                }
+            }
+            ByteBuffer buffer = current.duplicate();
+            buffer.position((int) offset);
+            buffer.limit((int) offset + length);
+            return buffer.slice();
+        }
+
+        synchronized void truncate(long size) throws IOException {
+            map = null;
+            channel.truncate(size);
+        }
+    }
+}
@@ -0,0 +1,522 @@
+package com.example.activity.history;
+
+import org.activiti.bpmn.model.FlowElement;
+import org.activiti.bpmn.model.FlowNode;
+import org.activiti.bpmn.model.SequenceFlow;
+import org.activiti.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.activiti.engine.impl.cfg.TransactionState;
+import org.activiti.engine.impl.context.Context;
+import org.activiti.engine.impl.history.DefaultHistoryManager;
+import org.activiti.engine.impl.history.HistoryLevel;
+import org.activiti.engine.impl.interceptor.CommandContext;
+import org.activiti.engine.impl.persistence.entity.*;
+
+import java.util.*;
+
+/**
+ * 流程实例、活动实例、任务实例和候选人历史(ACT_HI_PROCINST、ACT_HI_ACTINST、ACT_HI_TASKINST、ACT_HI_IDENTITYLINK)
+ * 不在运行时事务内写入：一个事务内的变化先合并在CommandContext中(同一事务内开始又结束的行只插入一次)，
+ * 事务提交后交给AsyncHistoryWriter，由后台线程批量写库；回滚的事务不产生历史。
+ * 这几张表在提交后延迟最多flush-interval-millis才能查到；
+ * 变量、明细、评论和附件(ACT_HI_VARINST、ACT_HI_DETAIL、ACT_HI_COMMENT、ACT_HI_ATTACHMENT)仍由引擎在事务内写入，
+ * 明细引用的活动实例还没有写入时，提交后由AsyncHistoryWriter补上ACT_INST_ID_。
+ * 写入的字段和引擎DefaultHistoryManager相同，但不派发HISTORIC_*事件
+ */
+public class AsyncHistoryManager extends DefaultHistoryManager {
+
+    static final String PROCESS_TABLE = "ACT_HI_PROCINST";
+
+    static final String ACTIVITY_TABLE = "ACT_HI_ACTINST";
+
+    static final String TASK_TABLE = "ACT_HI_TASKINST";
+
+    static final String IDENTITY_LINK_TABLE = "ACT_HI_IDENTITYLINK";
+
+    static final String DETAIL_TABLE = "ACT_HI_DETAIL";
+
+    private static final String PENDING_ATTRIBUTE = AsyncHistoryManager.class.getName() + ".pending";
+
+    private final AsyncHistoryWriter writer;
+
+    public AsyncHistoryManager(ProcessEngineConfigurationImpl configuration, HistoryLevel historyLevel, AsyncHistoryWriter writer) {
+        super(configuration, historyLevel);
+        this.writer = writer;
+    }
+
+    // 流程实例
+
+    @Override
+    public void recordProcessInstanceStart(ExecutionEntity processInstance, FlowElement initialElement) {
+        if (isHistoryLevelAtLeast(HistoryLevel.ACTIVITY)) {
+            HistoricProcessInstanceEntity historicProcessInstance = getHistoricProcessInstanceEntityManager().create(processInstance);
+            historicProcessInstance.setStartActivityId(initialElement.getId());
+            pending().add(insert(historicProcessInstance));
+        }
+    }
+
+    @Override
+    public void recordSubProcessInstanceStart(ExecutionEntity parentExecution, ExecutionEntity subProcessInstance,
+                                              FlowElement initialElement) {
+        if (isHistoryLevelAtLeast(HistoryLevel.ACTIVITY)) {
+            HistoricProcessInstanceEntity historicProcessInstance = getHistoricProcessInstanceEntityManager().create(subProcessInstance);
+            if (historicProcessInstance.getStartActivityId() == null) {
+                historicProcessInstance.setStartActivityId(initialElement.getId());
+            }
+            pending().add(insert(historicProcessInstance));
+            changeActivity(parentExecution, "CALL_PROC_INST_ID_", subProcessInstance.getProcessInstanceId());
+        }
+    }
+
+    @Override
+    public void recordProcessInstanceEnd(String processInstanceId, String deleteReason, String activityId) {
+        if (isHistoryLevelAtLeast(HistoryLevel.ACTIVITY)) {
+            Date endTime = getClock().getCurrentTime();
+            PendingHistory pending = pending();
+            HistoryRowChange inserted = pending.inserted(PROCESS_TABLE, processInstanceId);
+            if (inserted != null) {
+                markEnded(inserted, endTime, deleteReason).value("END_ACT_ID_", activityId);
+            } else {
+                pending.add(new HistoryRowChange(HistoryRowChange.Kind.END, PROCESS_TABLE, processInstanceId)
+                        .value("END_TIME_", endTime).value("DELETE_REASON_", deleteReason).value("END_ACT_ID_", activityId));
+            }
+        }
+    }
+
+    @Override
+    public void recordProcessInstanceNameChange(String processInstanceId, String newName) {
+        if (isHistoryLevelAtLeast(HistoryLevel.ACTIVITY)) {
+            change(PROCESS_TABLE, processInstanceId, "NAME_", newName);
+        }
+    }
+
+    @Override
+    public void recordProcessDefinitionChange(String processInstanceId, String processDefinitionId) {
+        if (isHistoryLevelAtLeast(HistoryLevel.ACTIVITY)) {
+            change(PROCESS_TABLE, processInstanceId, "PROC_DEF_ID_", processDefinitionId);
+        }
+    }
+
+    @Override
+    public void updateProcessBusinessKeyInHistory(ExecutionEntity processInstance) {
+        if (isHistoryEnabled()) {
+            change(PROCESS_TABLE, processInstance.getId(), "BUSINESS_KEY_", processInstance.getProcessInstanceBusinessKey());
+        }
+    }
+
+    // 活动实例
+
+    @Override
+    public void recordActivityStart(ExecutionEntity execution) {
+        if (isHistoryLevelAtLeast(HistoryLevel.ACTIVITY) && execution.getActivityId() != null
+                && execution.getCurrentFlowElement() != null) {
+            PendingHistory pending = pending();
+            if (pending.activity(execution.getId(), execution.getActivityId(), true) == null) {
+                pending.add(insertActivity(execution));
+            }
+        }
+    }
+
+    @Override
+    public void recordActivityEnd(ExecutionEntity execution, String deleteReason) {
+        if (isHistoryLevelAtLeast(HistoryLevel.ACTIVITY)) {
+            String activityId = activityId(execution);
+            if (activityId == null) {
+                return;
+            }
+            Date endTime = getClock().getCurrentTime();
+            PendingHistory pending = pending();
+            List<String> executionIds = new ArrayList<>();
+            HistoryRowChange inserted = pending.activity(execution, activityId, executionIds);
+            if (inserted != null) {
+                markEnded(inserted, endTime, deleteReason);
+            } else if (!executionIds.isEmpty()) {
+                pending.add(new HistoryRowChange(HistoryRowChange.Kind.END, executionIds, activityId)
+                        .value("END_TIME_", endTime).value("DELETE_REASON_", deleteReason));
+            }
+        }
+    }
+
+    @Override
+    public void recordHistoricDetailVariableCreate(VariableInstanceEntity variable, ExecutionEntity sourceActivityExecution,
+                                                   boolean useActivityId) {
+        if (!isHistoryLevelAtLeast(HistoryLevel.FULL)) {
+            return;
+        }
+        HistoricDetailVariableInstanceUpdateEntity detail =
+                getHistoricDetailEntityManager().copyAndInsertHistoricDetailVariableInstanceUpdateEntity(variable);
+        String activityId = useActivityId && sourceActivityExecution != null ? activityId(sourceActivityExecution) : null;
+        if (activityId == null) {
+            return;
+        }
+        HistoricActivityInstanceEntity activityInstance = findActivityInstance(sourceActivityExecution, activityId, false, false);
+        if (activityInstance != null) {
+            detail.setActivityInstanceId(activityInstance.getId());
+        } else {
+            // 活动实例可能还在写入队列中，提交后按执行和节点找到它再写入ACT_INST_ID_
+            List<String> executionIds = new ArrayList<>();
+            pending().activity(sourceActivityExecution, activityId, executionIds);
+            if (!executionIds.isEmpty()) {
+                HistoryRowChange link = new HistoryRowChange(HistoryRowChange.Kind.LINK_ACTIVITY, DETAIL_TABLE, detail.getId());
+                link.setExecutionIds(executionIds);
+                link.setActivityId(activityId);
+                pending().add(link);
+            }
+        }
+    }
+
+    /**
+     * 取变量明细引用的活动实例ID：本事务内插入的活动实例返回只带ID的实体，不写入数据库
+     */
+    @Override
+    public HistoricActivityInstanceEntity findActivityInstance(ExecutionEntity execution, String activityId,
+                                                               boolean createOnNotFound, boolean endTimeMustBeNull) {
+        if (activityId == null) {
+            return null;
+        }
+        HistoryRowChange inserted = pending().activity(execution.getId(), activityId, endTimeMustBeNull);
+        if (inserted != null) {
+            HistoricActivityInstanceEntity activityInstance = getHistoricActivityInstanceEntityManager().create();
+            activityInstance.setId(inserted.getId());
+            return activityInstance;
+        }
+        return super.findActivityInstance(execution, activityId, false, endTimeMustBeNull);
+    }
+
+    // 任务实例
+
+    @Override
+    public void recordTaskCreated(TaskEntity task, ExecutionEntity execution) {
+        if (isHistoryLevelAtLeast(HistoryLevel.AUDIT)) {
+            pending().add(insert(getHistoricTaskInstanceEntityManager().create(task, execution)));
+        }
+        recordTaskId(task);
+    }
+
+    @Override
+    public void recordTaskId(TaskEntity task) {
+        if (isHistoryLevelAtLeast(HistoryLevel.ACTIVITY) && task.getExecution() != null) {
+            changeActivity(task.getExecution(), "TASK_ID_", task.getId());
+        }
+    }
+
+    @Override
+    public void recordTaskAssignment(TaskEntity task) {
+        if (isHistoryLevelAtLeast(HistoryLevel.ACTIVITY) && task.getExecution() != null) {
+            changeActivity(task.getExecution(), "ASSIGNEE_", task.getAssignee());
+        }
+    }
+
+    @Override
+    public void recordTaskEnd(String taskId, String deleteReason) {
+        if (isHistoryLevelAtLeast(HistoryLevel.AUDIT)) {
+            Date endTime = getClock().getCurrentTime();
+            PendingHistory pending = pending();
+            HistoryRowChange inserted = pending.inserted(TASK_TABLE, taskId);
+            if (inserted != null) {
+                markEnded(inserted, endTime, deleteReason);
+            } else {
+                pending.add(new HistoryRowChange(HistoryRowChange.Kind.END, TASK_TABLE, taskId)
+                        .value("END_TIME_", endTime).value("DELETE_REASON_", deleteReason));
+            }
+        }
+    }
+
+    @Override
+    public void recordTaskClaim(TaskEntity task) {
+        recordTaskChange(HistoryLevel.AUDIT, task.getId(), "CLAIM_TIME_", task.getClaimTime());
+    }
+
+    @Override
+    public void recordTaskAssigneeChange(String taskId, String assignee) {
+        recordTaskChange(HistoryLevel.AUDIT, taskId, "ASSIGNEE_", assignee);
+    }
+
+    @Override
+    public void recordTaskOwnerChange(String taskId, String owner) {
+        recordTaskChange(HistoryLevel.AUDIT, taskId, "OWNER_", owner);
+    }
+
+    @Override
+    public void recordTaskNameChange(String taskId, String taskName) {
+        recordTaskChange(HistoryLevel.AUDIT, taskId, "NAME_", taskName);
+    }
+
+    @Override
+    public void recordTaskDescriptionChange(String taskId, String description) {
+        recordTaskChange(HistoryLevel.AUDIT, taskId, "DESCRIPTION_", description);
+    }
+
+    @Override
+    public void recordTaskDueDateChange(String taskId, Date dueDate) {
+        recordTaskChange(HistoryLevel.AUDIT, taskId, "DUE_DATE_", dueDate);
+    }
+
+    @Override
+    public void recordTaskPriorityChange(String taskId, int priority) {
+        recordTaskChange(HistoryLevel.AUDIT, taskId, "PRIORITY_", priority);
+    }
+
+    @Override
+    public void recordTaskCategoryChange(String taskId, String category) {
+        recordTaskChange(HistoryLevel.AUDIT, taskId, "CATEGORY_", category);
+    }
+
+    @Override
+    public void recordTaskFormKeyChange(String taskId, String formKey) {
+        recordTaskChange(HistoryLevel.AUDIT, taskId, "FORM_KEY_", formKey);
+    }
+
+    @Override
+    public void recordTaskParentTaskIdChange(String taskId, String parentTaskId) {
+        recordTaskChange(HistoryLevel.AUDIT, taskId, "PARENT_TASK_ID_", parentTaskId);
+    }
+
+    @Override
+    public void recordTaskExecutionIdChange(String taskId, String executionId) {
+        recordTaskChange(HistoryLevel.AUDIT, taskId, "EXECUTION_ID_", executionId);
+    }
+
+    @Override
+    public void recordTaskDefinitionKeyChange(String taskId, String taskDefinitionKey) {
+        recordTaskChange(HistoryLevel.AUDIT, taskId, "TASK_DEF_KEY_", taskDefinitionKey);
+    }
+
+    @Override
+    public void recordTaskProcessDefinitionChange(String taskId, String processDefinitionId) {
+        recordTaskChange(HistoryLevel.ACTIVITY, taskId, "PROC_DEF_ID_", processDefinitionId);
+    }
+
+    // 候选人/参与人
+
+    @Override
+    public void recordIdentityLinkCreated(IdentityLinkEntity identityLink) {
+        if (isHistoryLevelAtLeast(HistoryLevel.AUDIT)
+                && (identityLink.getProcessInstanceId() != null || identityLink.getTaskId() != null)) {
+            pending().add(new HistoryRowChange(HistoryRowChange.Kind.INSERT, IDENTITY_LINK_TABLE, identityLink.getId())
+                    .value("ID_", identityLink.getId())
+                    .value("GROUP_ID_", identityLink.getGroupId())
+                    .value("TYPE_", identityLink.getType())
+                    .value("USER_ID_", identityLink.getUserId())
+                    .value("TASK_ID_", identityLink.getTaskId())
+                    .value("PROC_INST_ID_", identityLink.getProcessInstanceId()));
+        }
+    }
+
+    @Override
+    public void deleteHistoricIdentityLink(String id) {
+        if (isHistoryLevelAtLeast(HistoryLevel.AUDIT)) {
+            PendingHistory pending = pending();
+            if (!pending.removeInserted(IDENTITY_LINK_TABLE, id)) {
+                pending.add(new HistoryRowChange(HistoryRowChange.Kind.DELETE, IDENTITY_LINK_TABLE, id));
+            }
+        }
+    }
+
+    private void recordTaskChange(HistoryLevel level, String taskId, String column, Object value) {
+        if (isHistoryLevelAtLeast(level)) {
+            change(TASK_TABLE, taskId, column, value);
+        }
+    }
+
+    /**
+     * 本事务插入的行直接修改插入的值，否则按ID_更新
+     */
+    private void change(String table, String id, String column, Object value) {
+        PendingHistory pending = pending();
+        HistoryRowChange inserted = pending.inserted(table, id);
+        if (inserted != null) {
+            inserted.value(column, value);
+        } else {
+            pending.add(new HistoryRowChange(HistoryRowChange.Kind.UPDATE, table, id).value(column, value));
+        }
+    }
+
+    /**
+     * 修改执行当前所在节点的未结束活动实例
+     */
+    private void changeActivity(ExecutionEntity execution, String column, Object value) {
+        String activityId = activityId(execution);
+        if (activityId == null) {
+            return;
+        }
+        PendingHistory pending = pending();
+        List<String> executionIds = new ArrayList<>();
+        HistoryRowChange inserted = pending.activity(execution, activityId, executionIds);
+        if (inserted != null) {
+            inserted.value(column, value);
+        } else if (!executionIds.isEmpty()) {
+            pending.add(new HistoryRowChange(HistoryRowChange.Kind.UPDATE, executionIds, activityId).value(column, value));
+        }
+    }
+
+    private static HistoryRowChange markEnded(HistoryRowChange inserted, Date endTime, String deleteReason) {
+        Date startTime = (Date) inserted.getValues().get("START_TIME_");
+        return inserted.value("END_TIME_", endTime)
+                .value("DURATION_", endTime.getTime() - startTime.getTime())
+                .value("DELETE_REASON_", deleteReason);
+    }
+
+    /**
+     * 执行当前所在的节点，与DefaultHistoryManager.findActivityInstance(execution, ...)相同：
+     * 节点本身，或没有监听器在执行的连线的来源节点
+     */
+    private static String activityId(ExecutionEntity execution) {
+        FlowElement flowElement = execution.getCurrentFlowElement();
+        if (flowElement instanceof FlowNode) {
+            return flowElement.getId();
+        }
+        if (flowElement instanceof SequenceFlow && execution.getCurrentActivitiListener() == null) {
+            return ((SequenceFlow) flowElement).getSourceFlowElement().getId();
+        }
+        return null;
+    }
+
+    private HistoryRowChange insertActivity(ExecutionEntity execution) {
+        FlowElement flowElement = execution.getCurrentFlowElement();
+        String id = getProcessEngineConfiguration().getIdGenerator().getNextId();
+        return new HistoryRowChange(HistoryRowChange.Kind.INSERT, ACTIVITY_TABLE, id)
+                .value("ID_", id)
+                .value("PROC_DEF_ID_", execution.getProcessDefinitionId())
+                .value("PROC_INST_ID_", execution.getProcessInstanceId())
+                .value("EXECUTION_ID_", execution.getId())
+                .value("ACT_ID_", execution.getActivityId())
+                .value("TASK_ID_", null)
+                .value("CALL_PROC_INST_ID_", null)
+                .value("ACT_NAME_", flowElement.getName())
+                .value("ACT_TYPE_", parseActivityType(flowElement))
+                .value("ASSIGNEE_", null)
+                .value("START_TIME_", getClock().getCurrentTime())
+                .value("END_TIME_", null)
+                .value("DURATION_", null)
+                .value("DELETE_REASON_", null)
+                .value("TENANT_ID_", tenantId(execution.getTenantId()));
+    }
+
+    private static HistoryRowChange insert(HistoricProcessInstanceEntity entity) {
+        return new HistoryRowChange(HistoryRowChange.Kind.INSERT, PROCESS_TABLE, entity.getId())
+                .value("ID_", entity.getId())
+                .value("PROC_INST_ID_", entity.getProcessInstanceId())
+                .value("BUSINESS_KEY_", entity.getBusinessKey())
+                .value("PROC_DEF_ID_", entity.getProcessDefinitionId())
+                .value("START_TIME_", entity.getStartTime())
+                .value("END_TIME_", entity.getEndTime())
+                .value("DURATION_", entity.getDurationInMillis())
+                .value("START_USER_ID_", entity.getStartUserId())
+                .value("START_ACT_ID_", entity.getStartActivityId())
+                .value("END_ACT_ID_", entity.getEndActivityId())
+                .value("SUPER_PROCESS_INSTANCE_ID_", entity.getSuperProcessInstanceId())
+                .value("DELETE_REASON_", entity.getDeleteReason())
+                .value("TENANT_ID_", tenantId(entity.getTenantId()))
+                .value("NAME_", entity.getName());
+    }
+
+    private static HistoryRowChange insert(HistoricTaskInstanceEntity entity) {
+        return new HistoryRowChange(HistoryRowChange.Kind.INSERT, TASK_TABLE, entity.getId())
+                .value("ID_", entity.getId())
+                .value("PROC_DEF_ID_", entity.getProcessDefinitionId())
+                .value("TASK_DEF_KEY_", entity.getTaskDefinitionKey())
+                .value("PROC_INST_ID_", entity.getProcessInstanceId())
+                .value("EXECUTION_ID_", entity.getExecutionId())
+                .value("NAME_", entity.getName())
+                .value("PARENT_TASK_ID_", entity.getParentTaskId())
+                .value("DESCRIPTION_", entity.getDescription())
+                .value("OWNER_", entity.getOwner())
+                .value("ASSIGNEE_", entity.getAssignee())
+                .value("START_TIME_", entity.getStartTime())
+                .value("CLAIM_TIME_", entity.getClaimTime())
+                .value("END_TIME_", entity.getEndTime())
+                .value("DURATION_", entity.getDurationInMillis())
+                .value("DELETE_REASON_", entity.getDeleteReason())
+                .value("PRIORITY_", entity.getPriority())
+                .value("DUE_DATE_", entity.getDueDate())
+                .value("FORM_KEY_", entity.getFormKey())
+                .value("CATEGORY_", entity.getCategory())
+                .value("TENANT_ID_", tenantId(entity.getTenantId()));
+    }
+
+    private static String tenantId(String tenantId) {
+        return tenantId == null ? ProcessEngineConfigurationImpl.NO_TENANT_ID : tenantId;
+    }
+
+    /**
+     * 当前事务的历史变化，第一次使用时注册提交后的回调
+     */
+    private PendingHistory pending() {
+        CommandContext commandContext = Context.getCommandContext();
+        PendingHistory pending = commandContext.getGenericAttribute(PENDING_ATTRIBUTE);
+        if (pending == null) {
+            PendingHistory changes = new PendingHistory();
+            commandContext.addAttribute(PENDING_ATTRIBUTE, changes);
+            Context.getTransactionContext().addTransactionListener(TransactionState.COMMITTED,
+                    context -> writer.enqueue(changes.changes));
+            pending = changes;
+        }
+        return pending;
+    }
+
+    /**
+     * 一个事务内按顺序记录的变化，以及本事务插入的行(同一事务内的后续修改直接合并到插入的值中)
+     */
+    private static class PendingHistory {
+
+        private final List<HistoryRowChange> changes = new ArrayList<>();
+
+        private final Map<String, HistoryRowChange> inserted = new HashMap<>();
+
+        void add(HistoryRowChange change) {
+            changes.add(change);
+            if (change.getKind() == HistoryRowChange.Kind.INSERT) {
+                inserted.put(change.getTable() + ":" + change.getId(), change);
+            }
+        }
+
+        HistoryRowChange inserted(String table, String id) {
+            return inserted.get(table + ":" + id);
+        }
+
+        boolean removeInserted(String table, String id) {
+            HistoryRowChange change = inserted.remove(table + ":" + id);
+            return change != null && changes.remove(change);
+        }
+
+        /**
+         * 本事务插入的活动实例，后插入的优先
+         */
+        HistoryRowChange activity(String executionId, String activityId, boolean endTimeMustBeNull) {
+            for (int i = changes.size() - 1; i >= 0; i--) {
+                HistoryRowChange change = changes.get(i);
+                Map<String, Object> values = change.getValues();
+                if (change.getKind() == HistoryRowChange.Kind.INSERT && ACTIVITY_TABLE.equals(change.getTable())
+                        && executionId.equals(values.get("EXECUTION_ID_")) && activityId.equals(values.get("ACT_ID_"))
+                        && (!endTimeMustBeNull || values.get("END_TIME_") == null)) {
+                    return change;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 按DefaultHistoryManager的顺序在执行及其上级执行上查找未结束的活动实例：
+         * 在数据库中查找之前就找到本事务插入的行时直接返回；否则把需要到数据库中查找的执行ID
+         * (本事务新建的执行和流程实例执行除外)依次放入executionIds，返回null
+         */
+        HistoryRowChange activity(ExecutionEntity execution, String activityId, List<String> executionIds) {
+            for (ExecutionEntity current = execution; current != null;
+                 current = current.getParentId() == null ? null : current.getParent()) {
+                HistoryRowChange change = activity(current.getId(), activityId, true);
+                if (change != null) {
+                    if (executionIds.isEmpty()) {
+                        return change;
+                    }
+                    // 先到数据库中查找前面的执行，找不到时使用本事务插入的这一行，写入时它已在前面插入
+                    executionIds.add(current.getId());
+                    return null;
+                }
+                if (!current.isInserted() && !current.isProcessInstanceType()) {
+                    executionIds.add(current.getId());
+                }
+            }
+            return null;
+        }
+    }
+}
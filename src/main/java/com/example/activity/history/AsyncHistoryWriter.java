@@ -0,0 +1,455 @@
+package com.example.activity.history;
+
+import com.example.activity.config.AsyncHistoryProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 异步历史写入：AsyncHistoryManager在事务提交后把一个事务的ACT_HI_*行变化放入有界队列，
+ * 后台线程按batchSize在一个事务内写库，连续的同表插入合并为一次jdbc批量插入；
+ * WAL模式下后台线程写库前先把这一批追加到本地日志并刷盘，写库成功后截断，启动时重放(至少写入一次，已插入的行跳过)。
+ * 更新找不到对应的行时(插入还在队列中，或在其他节点的队列中)保留重试，超过unmatchedRetentionMillis后丢弃
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "demo.history.async", name = "enabled", havingValue = "true")
+public class AsyncHistoryWriter {
+
+    @Autowired
+    private AsyncHistoryProperties properties;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private TransactionTemplate transactionTemplate;
+
+    private BlockingQueue<HistoryRowChange> queue;
+
+    private WriteAheadLog writeAheadLog;
+
+    private Thread flusher;
+
+    private volatile boolean running;
+
+    /**
+     * 提交线程直接写库失败的变化，由后台线程重试
+     */
+    private final Queue<HistoryRowChange> failedInline = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 找不到对应行的更新，按加入顺序重试
+     */
+    private final List<Unmatched> unmatched = new ArrayList<>();
+
+    private Timer flushTimer;
+
+    private Counter writtenCounter;
+
+    private Counter inlineCounter;
+
+    private Counter droppedCounter;
+
+    @PostConstruct
+    public void start() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        queue = new ArrayBlockingQueue<>(properties.getCapacity());
+        meterRegistry.gauge("demo.history.queue.depth", queue, BlockingQueue::size);
+        meterRegistry.gauge("demo.history.unmatched", unmatched, list -> unmatchedSize());
+        flushTimer = Timer.builder("demo.history.flush").description("批量写入历史表的耗时").register(meterRegistry);
+        writtenCounter = meterRegistry.counter("demo.history.rows.written");
+        inlineCounter = meterRegistry.counter("demo.history.rows.inline");
+        droppedCounter = meterRegistry.counter("demo.history.rows.dropped");
+
+        if (properties.getDurability() == AsyncHistoryProperties.Durability.WAL) {
+            writeAheadLog = new WriteAheadLog(Paths.get(properties.getWalPath()));
+            List<HistoryRowChange> pending = writeAheadLog.readAll();
+            if (!pending.isEmpty()) {
+                log.info("> Replaying {} history changes from {}", pending.size(), properties.getWalPath());
+                for (int from = 0; from < pending.size(); from += properties.getBatchSize()) {
+                    addUnmatched(write(pending.subList(from, Math.min(from + properties.getBatchSize(), pending.size()))));
+                }
+            }
+            rewriteWal();
+        }
+
+        running = true;
+        flusher = new Thread(this::flushLoop, "history-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        running = false;
+        flusher.interrupt();
+        flusher.join(TimeUnit.SECONDS.toMillis(10));
+        List<HistoryRowChange> remaining = new ArrayList<>();
+        HistoryRowChange failed;
+        while ((failed = failedInline.poll()) != null) {
+            remaining.add(failed);
+        }
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            if (writeAheadLog != null) {
+                writeAheadLog.append(remaining);
+            }
+            addUnmatched(write(remaining));
+        }
+        if (writeAheadLog != null) {
+            rewriteWal();
+            writeAheadLog.close();
+        } else if (unmatchedSize() > 0) {
+            log.warn("> {} history changes without matching rows are discarded at shutdown", unmatchedSize());
+        }
+    }
+
+    /**
+     * 事务提交后调用，一个事务的变化按顺序一起传入；队列已满时这个事务余下的变化在当前线程直接写库
+     */
+    public void enqueue(List<HistoryRowChange> changes) {
+        List<HistoryRowChange> overflow = null;
+        for (HistoryRowChange change : changes) {
+            if (overflow == null && queue.offer(change)) {
+                continue;
+            }
+            if (overflow == null) {
+                overflow = new ArrayList<>();
+            }
+            overflow.add(change);
+        }
+        if (overflow != null) {
+            inlineCounter.increment(overflow.size());
+            try {
+                addUnmatched(write(overflow));
+            } catch (RuntimeException e) {
+                log.error("> Failed to write {} history changes inline, will retry in background", overflow.size(), e);
+                failedInline.addAll(overflow);
+            }
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void flushLoop() {
+        List<HistoryRowChange> batch = new ArrayList<>(properties.getBatchSize());
+        boolean logged = false;
+        while (running) {
+            try {
+                if (batch.isEmpty()) {
+                    fillBatch(batch);
+                }
+                boolean written = false;
+                if (!batch.isEmpty()) {
+                    if (writeAheadLog != null && !logged) {
+                        writeAheadLog.append(batch);
+                        logged = true;
+                    }
+                    addUnmatched(write(batch));
+                    batch.clear();
+                    logged = false;
+                    written = true;
+                }
+                if (retryUnmatched() || written) {
+                    rewriteWal();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                // 写库失败时保留这一批(已写入日志的不再重复写入)，稍后重试；期间队列满了由提交线程直接写库
+                log.error("> Failed to write {} history changes, will retry", batch.size(), e);
+                sleepQuietly(properties.getFlushIntervalMillis());
+            }
+        }
+        // 停止时还没写入的一批交给stop()写入
+        failedInline.addAll(batch);
+    }
+
+    /**
+     * 先取直接写库失败的变化，再从队列取，最多batchSize条
+     */
+    private void fillBatch(List<HistoryRowChange> batch) throws InterruptedException {
+        HistoryRowChange failed;
+        while (batch.size() < properties.getBatchSize() && (failed = failedInline.poll()) != null) {
+            batch.add(failed);
+        }
+        if (batch.isEmpty()) {
+            HistoryRowChange first = queue.poll(properties.getFlushIntervalMillis(), TimeUnit.MILLISECONDS);
+            if (first == null) {
+                return;
+            }
+            batch.add(first);
+        }
+        queue.drainTo(batch, properties.getBatchSize() - batch.size());
+    }
+
+    /**
+     * 在一个事务内按顺序写入，返回找不到对应行的更新；
+     * 插入的行已存在(重放日志或重试)时逐行跳过已存在的行后重新写入这一批
+     */
+    private List<HistoryRowChange> write(List<HistoryRowChange> changes) {
+        long start = System.nanoTime();
+        List<HistoryRowChange> missing;
+        try {
+            missing = transactionTemplate.execute(status -> apply(changes, false));
+        } catch (DuplicateKeyException e) {
+            missing = transactionTemplate.execute(status -> apply(changes, true));
+        }
+        flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        writtenCounter.increment(changes.size() - missing.size());
+        return missing;
+    }
+
+    private List<HistoryRowChange> apply(List<HistoryRowChange> changes, boolean skipExisting) {
+        List<HistoryRowChange> missing = new ArrayList<>();
+        List<HistoryRowChange> inserts = new ArrayList<>();
+        for (HistoryRowChange change : changes) {
+            if (change.getKind() == HistoryRowChange.Kind.INSERT) {
+                if (!inserts.isEmpty() && !sameInsert(inserts.get(0), change)) {
+                    insert(inserts, skipExisting);
+                    inserts.clear();
+                }
+                inserts.add(change);
+                continue;
+            }
+            if (!inserts.isEmpty()) {
+                insert(inserts, skipExisting);
+                inserts.clear();
+            }
+            if (!applyChange(change)) {
+                missing.add(change);
+            }
+        }
+        if (!inserts.isEmpty()) {
+            insert(inserts, skipExisting);
+        }
+        return missing;
+    }
+
+    private static boolean sameInsert(HistoryRowChange first, HistoryRowChange change) {
+        return first.getTable().equals(change.getTable())
+                && new ArrayList<>(first.getValues().keySet()).equals(new ArrayList<>(change.getValues().keySet()));
+    }
+
+    private void insert(List<HistoryRowChange> inserts, boolean skipExisting) {
+        HistoryRowChange first = inserts.get(0);
+        List<HistoryRowChange> rows = !skipExisting ? inserts : inserts.stream()
+                .filter(row -> jdbcTemplate.queryForObject("select count(*) from " + row.getTable() + " where ID_ = ?",
+                        Integer.class, row.getId()) == 0)
+                .collect(Collectors.toList());
+        if (rows.isEmpty()) {
+            return;
+        }
+        String sql = "insert into " + first.getTable() + " (" + String.join(", ", first.getValues().keySet()) + ") values ("
+                + String.join(", ", Collections.nCopies(first.getValues().size(), "?")) + ")";
+        jdbcTemplate.batchUpdate(sql, rows, rows.size(), (ps, row) -> setValues(ps, 1, row.getValues().values()));
+    }
+
+    /**
+     * 更新、结束、关联活动实例或删除一行，找不到要更新的行时返回false
+     */
+    private boolean applyChange(HistoryRowChange change) {
+        if (change.getKind() == HistoryRowChange.Kind.DELETE) {
+            jdbcTemplate.update("delete from " + change.getTable() + " where ID_ = ?", change.getId());
+            return true;
+        }
+        if (change.getKind() == HistoryRowChange.Kind.LINK_ACTIVITY) {
+            Map<String, Object> activity = findActivity(change);
+            if (activity == null) {
+                return false;
+            }
+            jdbcTemplate.update("update " + change.getTable() + " set ACT_INST_ID_ = ? where ID_ = ?", activity.get("ID_"),
+                    change.getId());
+            return true;
+        }
+        Map<String, Object> row = change.getId() != null ? findRow(change) : findActivity(change);
+        if (row == null) {
+            return false;
+        }
+        Map<String, Object> values = new LinkedHashMap<>(change.getValues());
+        if (change.getKind() == HistoryRowChange.Kind.END) {
+            if (row.get("END_TIME_") != null) {
+                // 已经结束(重放日志时重复的结束)
+                return true;
+            }
+            Date endTime = (Date) values.get("END_TIME_");
+            values.put("DURATION_", endTime.getTime() - ((Date) row.get("START_TIME_")).getTime());
+        }
+        String sql = "update " + change.getTable() + " set "
+                + values.keySet().stream().map(column -> column + " = ?").collect(Collectors.joining(", ")) + " where ID_ = ?";
+        Object id = row.get("ID_");
+        jdbcTemplate.update(sql, ps -> ps.setObject(setValues(ps, 1, values.values()), id));
+        return true;
+    }
+
+    private Map<String, Object> findRow(HistoryRowChange change) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList("select ID_, START_TIME_, END_TIME_ from "
+                + change.getTable() + " where ID_ = ?", change.getId());
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * 依次在每个执行上查找未结束的活动实例
+     */
+    private Map<String, Object> findActivity(HistoryRowChange change) {
+        for (String executionId : change.getExecutionIds()) {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList("select ID_, START_TIME_, END_TIME_ from " + AsyncHistoryManager.ACTIVITY_TABLE
+                    + " where EXECUTION_ID_ = ? and ACT_ID_ = ? and END_TIME_ is null", executionId, change.getActivityId());
+            if (!rows.isEmpty()) {
+                return rows.get(0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 依次设置参数，返回下一个参数的位置
+     */
+    private static int setValues(PreparedStatement ps, int index, Collection<Object> values) throws SQLException {
+        for (Object value : values) {
+            if (value == null) {
+                ps.setNull(index++, Types.NULL);
+            } else if (value instanceof Date) {
+                ps.setTimestamp(index++, new Timestamp(((Date) value).getTime()));
+            } else {
+                ps.setObject(index++, value);
+            }
+        }
+        return index;
+    }
+
+    private void addUnmatched(List<HistoryRowChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (unmatched) {
+            for (HistoryRowChange change : changes) {
+                unmatched.add(new Unmatched(change, now));
+            }
+        }
+    }
+
+    /**
+     * 重试找不到对应行的更新，超过保留时间的丢弃；有变化时返回true
+     */
+    private boolean retryUnmatched() {
+        List<Unmatched> retry;
+        synchronized (unmatched) {
+            if (unmatched.isEmpty()) {
+                return false;
+            }
+            retry = new ArrayList<>(unmatched);
+            unmatched.clear();
+        }
+        Set<HistoryRowChange> missing = Collections.newSetFromMap(new IdentityHashMap<>());
+        try {
+            missing.addAll(write(retry.stream().map(entry -> entry.change).collect(Collectors.toList())));
+        } catch (RuntimeException e) {
+            synchronized (unmatched) {
+                unmatched.addAll(0, retry);
+            }
+            throw e;
+        }
+        long now = System.currentTimeMillis();
+        List<Unmatched> keep = new ArrayList<>();
+        int dropped = 0;
+        for (Unmatched entry : retry) {
+            if (!missing.contains(entry.change)) {
+                continue;
+            }
+            if (now - entry.since < properties.getUnmatchedRetentionMillis()) {
+                keep.add(entry);
+            } else {
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            droppedCounter.increment(dropped);
+            log.warn("> Dropped {} history changes without matching rows after {} ms", dropped,
+                    properties.getUnmatchedRetentionMillis());
+        }
+        synchronized (unmatched) {
+            unmatched.addAll(0, keep);
+        }
+        return keep.size() != retry.size();
+    }
+
+    /**
+     * 日志中的变化都已写入数据库：截断后只保留还在重试的更新
+     */
+    private void rewriteWal() {
+        if (writeAheadLog == null) {
+            return;
+        }
+        List<HistoryRowChange> retained;
+        synchronized (unmatched) {
+            retained = unmatched.stream().map(entry -> entry.change).collect(Collectors.toList());
+        }
+        writeAheadLog.truncate();
+        if (!retained.isEmpty()) {
+            writeAheadLog.append(retained);
+        }
+    }
+
+    private int unmatchedSize() {
+        synchronized (unmatched) {
+            return unmatched.size();
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Unmatched {
+
+        private final HistoryRowChange change;
+
+        /**
+         * 第一次找不到对应行的时间
+         */
+        private final long since;
+
+        Unmatched(HistoryRowChange change, long since) {
+            this.change = change;
+            this.since = since;
+        }
+    }
+}
@@ -0,0 +1,475 @@
+package com.example.activity.history;
+
+import com.example.activity.config.HistoryArchiveProperties;
+import com.example.activity.dto.ArchivedProcessInstance;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.activiti.engine.HistoryService;
+import org.activiti.engine.ManagementService;
+import org.activiti.engine.TaskService;
+import org.activiti.engine.history.HistoricActivityInstance;
+import org.activiti.engine.history.HistoricProcessInstance;
+import org.activiti.engine.history.HistoricTaskInstance;
+import org.activiti.engine.history.HistoricVariableInstance;
+import org.activiti.engine.impl.persistence.entity.HistoricVariableInstanceEntity;
+import org.activiti.engine.impl.variable.ValueFields;
+import org.activiti.engine.impl.variable.VariableType;
+import org.activiti.engine.task.Comment;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 历史数据归档
+ * 把结束时间早于配置天数的流程实例连同节点、任务、变量和批注写入归档段文件(json经deflate压缩)，刷盘后再从ACT_HI_*表删除，
+ * 使历史表的大小保持在归档周期内；按流程实例id和业务key的索引常驻内存，第一次归档或查询时打开归档目录并从段文件重建，
+ * 没有开启归档的节点在归档目录不存在时查询不会创建目录。
+ * 归档文件在本节点的目录中，而删除的是共享数据库中的数据，因此只允许一个归档方：第一次归档时把节点和目录记录到ACT_GE_PROPERTY，
+ * 其他节点或目录调用归档直接失败。更换归档节点需要先迁移归档目录，再删除该记录
+ */
+@Slf4j
+@Component
+public class HistoryArchiver {
+
+    @Autowired
+    private HistoryService historyService;
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private ManagementService managementService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private HistoryArchiveProperties properties;
+
+    static final String OWNER_PROPERTY = "demo.history-archive.owner";
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final Map<String, ArchiveSegmentStore.Location> index = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<String>> businessKeyIndex = new ConcurrentHashMap<>();
+
+    private final Object openLock = new Object();
+
+    private volatile ArchiveSegmentStore store;
+
+    private String owner;
+
+    private volatile boolean ownerVerified;
+
+    @PostConstruct
+    public void init() {
+        owner = nodeId() + ":" + Paths.get(properties.getDir()).toAbsolutePath();
+        if (properties.isEnabled()) {
+            // 开启定时归档的节点启动时就检查，配置错误的节点不会启动
+            verifyOwner();
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        synchronized (openLock) {
+            if (store != null) {
+                store.close();
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${demo.history-archive.interval-millis:3600000}",
+            initialDelayString = "${demo.history-archive.interval-millis:3600000}")
+    public void scheduledArchive() {
+        if (properties.isEnabled()) {
+            archive();
+        }
+    }
+
+    /**
+     * 归档所有结束时间早于配置天数的流程实例
+     * @return 本次归档的流程实例数
+     */
+    public synchronized int archive() {
+        verifyOwner();
+        store(true);
+        Date cutoff = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(properties.getMinAgeDays()));
+        int archived = 0;
+        while (true) {
+            List<HistoricProcessInstance> batch = historyService.createHistoricProcessInstanceQuery()
+                    .finished()
+                    .finishedBefore(cutoff)
+                    .orderByProcessInstanceEndTime().asc()
+                    .listPage(0, properties.getBatchSize());
+            if (batch.isEmpty()) {
+                break;
+            }
+            // 上次写入后删除失败的实例已在归档中，不再重复写入
+            List<HistoricProcessInstance> pending = batch.stream()
+                    .filter(instance -> !index.containsKey(instance.getId()))
+                    .collect(Collectors.toList());
+            write(pending);
+
+            int deleted = 0;
+            for (HistoricProcessInstance instance : batch) {
+                try {
+                    historyService.deleteHistoricProcessInstance(instance.getId());
+                    deleted++;
+                } catch (RuntimeException e) {
+                    log.warn("> Archived process instance {} could not be deleted", instance.getId(), e);
+                }
+            }
+            archived += deleted;
+            if (deleted == 0 || batch.size() < properties.getBatchSize()) {
+                break;
+            }
+        }
+        if (archived > 0) {
+            log.info("> Archived {} process instances finished before {}", archived, cutoff);
+        }
+        return archived;
+    }
+
+    public Optional<ArchivedProcessInstance> find(String processInstanceId) {
+        ArchiveSegmentStore current = store(false);
+        ArchiveSegmentStore.Location location = current == null ? null : index.get(processInstanceId);
+        return location == null ? Optional.empty() : Optional.of(decode(current.read(location)));
+    }
+
+    public List<ArchivedProcessInstance> findByBusinessKey(String businessKey) {
+        if (store(false) == null) {
+            return new ArrayList<>();
+        }
+        Set<String> processInstanceIds = businessKeyIndex.getOrDefault(businessKey, Collections.emptySet());
+        List<ArchivedProcessInstance> instances = new ArrayList<>(processInstanceIds.size());
+        for (String processInstanceId : processInstanceIds) {
+            find(processInstanceId).ifPresent(instances::add);
+        }
+        instances.sort(Comparator.comparing(ArchivedProcessInstance::getStartTime,
+                Comparator.nullsLast(Comparator.naturalOrder())));
+        return instances;
+    }
+
+    public boolean isArchived(String processInstanceId) {
+        return store(false) != null && index.containsKey(processInstanceId);
+    }
+
+    /**
+     * 已归档的流程实例数
+     */
+    public int size() {
+        return store(false) == null ? 0 : index.size();
+    }
+
+    /**
+     * 从ACT_HI_*表读取一个流程实例的完整历史
+     */
+    public ArchivedProcessInstance snapshot(HistoricProcessInstance instance) {
+        ArchivedProcessInstance snapshot = new ArchivedProcessInstance();
+        snapshot.setProcessInstanceId(instance.getId());
+        snapshot.setBusinessKey(instance.getBusinessKey());
+        snapshot.setProcessDefinitionId(instance.getProcessDefinitionId());
+        // 流程定义id的格式为 key:version:id
+        snapshot.setProcessDefinitionKey(instance.getProcessDefinitionId().split(":")[0]);
+        snapshot.setStartUserId(instance.getStartUserId());
+        snapshot.setStartTime(instance.getStartTime());
+        snapshot.setEndTime(instance.getEndTime());
+        snapshot.setDeleteReason(instance.getDeleteReason());
+
+        List<HistoricActivityInstance> activities = historyService.createHistoricActivityInstanceQuery()
+                .processInstanceId(instance.getId())
+                .orderByHistoricActivityInstanceStartTime().asc()
+                .list();
+        for (HistoricActivityInstance activity : activities) {
+            ArchivedProcessInstance.Activity item = new ArchivedProcessInstance.Activity();
+            item.setActivityId(activity.getActivityId());
+            item.setActivityName(activity.getActivityName());
+            item.setActivityType(activity.getActivityType());
+            item.setTaskId(activity.getTaskId());
+            item.setAssignee(activity.getAssignee());
+            item.setStartTime(activity.getStartTime());
+            item.setEndTime(activity.getEndTime());
+            snapshot.getActivities().add(item);
+        }
+
+        List<HistoricTaskInstance> tasks = historyService.createHistoricTaskInstanceQuery()
+                .processInstanceId(instance.getId())
+                .orderByHistoricTaskInstanceStartTime().asc()
+                .list();
+        for (HistoricTaskInstance task : tasks) {
+            ArchivedProcessInstance.Task item = new ArchivedProcessInstance.Task();
+            item.setTaskId(task.getId());
+            item.setTaskName(task.getName());
+            item.setTaskDefinitionKey(task.getTaskDefinitionKey());
+            item.setAssignee(task.getAssignee());
+            item.setOwner(task.getOwner());
+            item.setStartTime(task.getStartTime());
+            item.setClaimTime(task.getClaimTime());
+            item.setEndTime(task.getEndTime());
+            item.setDeleteReason(task.getDeleteReason());
+            snapshot.getTasks().add(item);
+        }
+
+        // 在命令中读取，保存在ACT_GE_BYTEARRAY中的值(序列化对象、字节数组)才能加载
+        managementService.executeCommand(commandContext -> {
+            List<HistoricVariableInstance> variables = historyService.createHistoricVariableInstanceQuery()
+                    .processInstanceId(instance.getId())
+                    .list();
+            for (HistoricVariableInstance variable : variables) {
+                HistoricVariableInstanceEntity entity = (HistoricVariableInstanceEntity) variable;
+                ArchivedProcessInstance.Variable item = new ArchivedProcessInstance.Variable();
+                item.setName(variable.getVariableName());
+                item.setType(variable.getVariableTypeName());
+                item.setTaskId(variable.getTaskId());
+                item.setValue(variable.getValue() == null ? null : String.valueOf(variable.getValue()));
+                item.setTextValue(entity.getTextValue());
+                item.setTextValue2(entity.getTextValue2());
+                item.setLongValue(entity.getLongValue());
+                item.setDoubleValue(entity.getDoubleValue());
+                item.setBytes(entity.getBytes());
+                snapshot.getVariables().add(item);
+            }
+            return null;
+        });
+
+        for (Comment comment : taskService.getProcessInstanceComments(instance.getId())) {
+            ArchivedProcessInstance.Comment item = new ArchivedProcessInstance.Comment();
+            item.setTaskId(comment.getTaskId());
+            item.setUserId(comment.getUserId());
+            item.setTime(comment.getTime());
+            item.setMessage(comment.getFullMessage());
+            snapshot.getComments().add(item);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 按引擎的变量类型从保存的原始字段还原变量值，序列化对象需要其类在classpath中
+     */
+    public Object variableValue(ArchivedProcessInstance.Variable variable) {
+        return managementService.executeCommand(commandContext -> {
+            VariableType type = commandContext.getProcessEngineConfiguration().getVariableTypes()
+                    .getVariableType(variable.getType());
+            return type.getValue(new ArchivedValueFields(variable));
+        });
+    }
+
+    /**
+     * 打开归档目录并从段文件重建索引，只在第一次调用时打开
+     * @param create 归档目录不存在时是否创建，为false且目录不存在时返回null
+     */
+    private ArchiveSegmentStore store(boolean create) {
+        ArchiveSegmentStore current = store;
+        if (current != null) {
+            return current;
+        }
+        synchronized (openLock) {
+            if (store == null) {
+                Path dir = Paths.get(properties.getDir());
+                if (!create && !Files.isDirectory(dir)) {
+                    return null;
+                }
+                store = new ArchiveSegmentStore(dir, properties.getSegmentSizeMb() * 1024L * 1024L, this::index);
+                log.info("> History archive opened, {} process instances archived", index.size());
+            }
+            return store;
+        }
+    }
+
+    /**
+     * 记录或检查归档方，已记录的归档方不是本节点的本目录时抛出异常
+     */
+    private void verifyOwner() {
+        if (ownerVerified) {
+            return;
+        }
+        try {
+            jdbcTemplate.update("insert into ACT_GE_PROPERTY (NAME_, VALUE_, REV_) values (?, ?, 1)", OWNER_PROPERTY, owner);
+        } catch (DuplicateKeyException e) {
+            // 已有归档方，下面检查是否是本节点
+        }
+        String current = jdbcTemplate.queryForObject("select VALUE_ from ACT_GE_PROPERTY where NAME_ = ?",
+                String.class, OWNER_PROPERTY);
+        if (!owner.equals(current)) {
+            throw new IllegalStateException("History is archived by " + current + ", not by this node (" + owner
+                    + "); only one node may archive, set demo.history-archive.enabled=false on the others");
+        }
+        ownerVerified = true;
+    }
+
+    private String nodeId() {
+        if (properties.getNodeId() != null && !properties.getNodeId().isEmpty()) {
+            return properties.getNodeId();
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("Cannot resolve host name, set demo.history-archive.node-id", e);
+        }
+    }
+
+    private void write(List<HistoricProcessInstance> instances) {
+        if (instances.isEmpty()) {
+            return;
+        }
+        List<String> processInstanceIds = new ArrayList<>(instances.size());
+        List<String> businessKeys = new ArrayList<>(instances.size());
+        List<byte[]> bodies = new ArrayList<>(instances.size());
+        for (HistoricProcessInstance instance : instances) {
+            processInstanceIds.add(instance.getId());
+            businessKeys.add(instance.getBusinessKey());
+            bodies.add(encode(snapshot(instance)));
+        }
+        List<ArchiveSegmentStore.Location> locations = store.append(processInstanceIds, businessKeys, bodies);
+        for (int i = 0; i < locations.size(); i++) {
+            index(processInstanceIds.get(i), businessKeys.get(i), locations.get(i));
+        }
+    }
+
+    private void index(String processInstanceId, String businessKey, ArchiveSegmentStore.Location location) {
+        index.put(processInstanceId, location);
+        if (businessKey != null) {
+            businessKeyIndex.computeIfAbsent(businessKey, key -> ConcurrentHashMap.newKeySet()).add(processInstanceId);
+        }
+    }
+
+    private byte[] encode(ArchivedProcessInstance instance) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new DeflaterOutputStream(bytes)) {
+            objectMapper.writeValue(out, instance);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot encode archived process instance " + instance.getProcessInstanceId(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private ArchivedProcessInstance decode(byte[] body) {
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(body))) {
+            ArchivedProcessInstance instance = objectMapper.readValue(in, ArchivedProcessInstance.class);
+            instance.setArchived(true);
+            return instance;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot decode archived process instance", e);
+        }
+    }
+
+    /**
+     * 归档变量的原始字段，供引擎的变量类型还原值
+     */
+    private static final class ArchivedValueFields implements ValueFields {
+
+        private final ArchivedProcessInstance.Variable variable;
+
+        private Object cachedValue;
+
+        ArchivedValueFields(ArchivedProcessInstance.Variable variable) {
+            this.variable = variable;
+        }
+
+        @Override
+        public String getName() {
+            return variable.getName();
+        }
+
+        @Override
+        public String getProcessInstanceId() {
+            return null;
+        }
+
+        @Override
+        public String getExecutionId() {
+            return null;
+        }
+
+        @Override
+        public String getTaskId() {
+            return variable.getTaskId();
+        }
+
+        @Override
+        public String getTextValue() {
+            return variable.getTextValue();
+        }
+
+        @Override
+        public void setTextValue(String textValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getTextValue2() {
+            return variable.getTextValue2();
+        }
+
+        @Override
+        public void setTextValue2(String textValue2) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Long getLongValue() {
+            return variable.getLongValue();
+        }
+
+        @Override
+        public void setLongValue(Long longValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Double getDoubleValue() {
+            return variable.getDoubleValue();
+        }
+
+        @Override
+        public void setDoubleValue(Double doubleValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public byte[] getBytes() {
+            return variable.getBytes();
+        }
+
+        @Override
+        public void setBytes(byte[] bytes) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object getCachedValue() {
+            return cachedValue;
+        }
+
+        @Override
+        public void setCachedValue(Object cachedValue) {
+            this.cachedValue = cachedValue;
+        }
+    }
+}
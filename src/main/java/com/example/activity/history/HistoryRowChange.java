@@ -0,0 +1,71 @@
+package com.example.activity.history;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一行ACT_HI_*历史表的变化，由AsyncHistoryManager在事务内生成，事务提交后由AsyncHistoryWriter写入
+ */
+@Data
+@NoArgsConstructor
+public class HistoryRowChange {
+
+    public enum Kind {
+        INSERT,
+        UPDATE,
+        /**
+         * 结束一行：写入values中的END_TIME_等字段，DURATION_按行中的START_TIME_计算，已结束的行不再修改
+         */
+        END,
+        /**
+         * 把ID_行的ACT_INST_ID_设为按executionIds + activityId找到的未结束活动实例的ID，
+         * 用于引擎在事务内写入的变量明细(ACT_HI_DETAIL)引用还没有写入的活动实例
+         */
+        LINK_ACTIVITY,
+        DELETE
+    }
+
+    private Kind kind;
+
+    private String table;
+
+    /**
+     * 行的ID_；为null时按executionIds + activityId定位未结束的活动实例(ACT_HI_ACTINST)
+     */
+    private String id;
+
+    /**
+     * 依次尝试的执行ID(当前执行及其上级执行)，与引擎DefaultHistoryManager查找活动实例的顺序一致
+     */
+    private List<String> executionIds = new ArrayList<>();
+
+    private String activityId;
+
+    /**
+     * 列名 -> 值，值为String、Integer、Long、Date或null
+     */
+    private Map<String, Object> values = new LinkedHashMap<>();
+
+    public HistoryRowChange(Kind kind, String table, String id) {
+        this.kind = kind;
+        this.table = table;
+        this.id = id;
+    }
+
+    public HistoryRowChange(Kind kind, List<String> executionIds, String activityId) {
+        this.kind = kind;
+        this.table = AsyncHistoryManager.ACTIVITY_TABLE;
+        this.executionIds = executionIds;
+        this.activityId = activityId;
+    }
+
+    public HistoryRowChange value(String column, Object value) {
+        values.put(column, value);
+        return this;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.activity.history;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * 历史变化的本地预写日志，每行一条json，只由写历史的后台线程追加和截断
+ * 列值带类型前缀(s:字符串 i:整数 l:长整数 d:时间毫秒)，重放时按原类型写库
+ */
+class WriteAheadLog implements AutoCloseable {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final Path path;
+
+    private final FileChannel channel;
+
+    WriteAheadLog(Path path) {
+        this.path = path;
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+            channel.position(channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open history WAL " + path, e);
+        }
+    }
+
+    /**
+     * 追加并刷盘，返回后变化不会因进程退出而丢失
+     */
+    void append(List<HistoryRowChange> changes) {
+        StringBuilder lines = new StringBuilder();
+        for (HistoryRowChange change : changes) {
+            lines.append(encode(change)).append('\n');
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot append to history WAL " + path, e);
+        }
+    }
+
+    List<HistoryRowChange> readAll() {
+        List<HistoryRowChange> changes = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                HistoryRowChange change = decode(line);
+                if (change != null) {
+                    changes.add(change);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read history WAL " + path, e);
+        }
+        return changes;
+    }
+
+    /**
+     * 清空日志
+     */
+    void truncate() {
+        try {
+            channel.truncate(0);
+            channel.position(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot truncate history WAL " + path, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static String encode(HistoryRowChange change) {
+        ObjectNode node = OBJECT_MAPPER.createObjectNode();
+        node.put("kind", change.getKind().name());
+        node.put("table", change.getTable());
+        node.put("id", change.getId());
+        ArrayNode executionIds = node.putArray("executionIds");
+        change.getExecutionIds().forEach(executionIds::add);
+        node.put("activityId", change.getActivityId());
+        ObjectNode values = node.putObject("values");
+        change.getValues().forEach((column, value) -> values.put(column, encodeValue(value)));
+        return node.toString();
+    }
+
+    /**
+     * 写入一半的行(进程在追加时退出)返回null
+     */
+    private static HistoryRowChange decode(String line) {
+        JsonNode node;
+        try {
+            node = OBJECT_MAPPER.readTree(line);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+        HistoryRowChange change = new HistoryRowChange(HistoryRowChange.Kind.valueOf(node.get("kind").asText()),
+                node.get("table").asText(), text(node.get("id")));
+        node.get("executionIds").forEach(executionId -> change.getExecutionIds().add(executionId.asText()));
+        change.setActivityId(text(node.get("activityId")));
+        Iterator<Map.Entry<String, JsonNode>> values = node.get("values").fields();
+        while (values.hasNext()) {
+            Map.Entry<String, JsonNode> value = values.next();
+            change.value(value.getKey(), decodeValue(text(value.getValue())));
+        }
+        return change;
+    }
+
+    private static String encodeValue(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Date) {
+            return "d:" + ((Date) value).getTime();
+        }
+        if (value instanceof Integer) {
+            return "i:" + value;
+        }
+        if (value instanceof Long) {
+            return "l:" + value;
+        }
+        return "s:" + value;
+    }
+
+    private static Object decodeValue(String value) {
+        if (value == null) {
+            return null;
+        }
+        String content = value.substring(2);
+        switch (value.charAt(0)) {
+            case 'd':
+                return new Date(Long.parseLong(content));
+            case 'i':
+                return Integer.valueOf(content);
+            case 'l':
+                return Long.valueOf(content);
+            default:
+                return content;
+        }
+    }
+
+    private static String text(JsonNode node) {
+        return node == null || node.isNull() ? null : node.asText();
+    }
+}
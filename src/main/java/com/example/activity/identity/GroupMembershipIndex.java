@@ -0,0 +1,266 @@
+package com.example.activity.identity;
+
+import lombok.extern.slf4j.Slf4j;
+import org.activiti.api.runtime.shared.identity.UserGroupManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Primary;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 组成员索引：组 -> 用户、用户 -> 组
+ * 组名来自Security中GROUP_开头的权限。用户在索引中用int编号，组成员保存为有序int数组；
+ * 查询读取不可变快照，无需加锁，用户变更时复制出新快照后整体替换。
+ * 同时作为引擎使用的UserGroupManager(@Primary，替代starter自带的ActivitiUserGroupManagerImpl)，
+ * 引擎解析候选组时直接读索引，不再每次加载用户
+ */
+@Slf4j
+@Primary
+@Component
+public class GroupMembershipIndex implements UserGroupManager {
+
+    private static final String ROLE_PREFIX = "ROLE_";
+
+    private static final String GROUP_PREFIX = "GROUP_";
+
+    private static final int[] NO_MEMBERS = new int[0];
+
+    private static final String[] NO_GROUPS = new String[0];
+
+    @Autowired
+    @Qualifier("myUserDetailsService")
+    private UserDetailsService userDetailsService;
+
+    private volatile Snapshot snapshot = new Snapshot(new String[0], 0, new HashMap<>(), new HashMap<>(), new HashMap<>());
+
+    @PostConstruct
+    public void init() {
+        if (userDetailsService instanceof ObservableUserDetailsManager) {
+            ObservableUserDetailsManager manager = (ObservableUserDetailsManager) userDetailsService;
+            manager.addListener(this::refreshUser);
+            rebuild(manager.getUsernames());
+        }
+    }
+
+    /**
+     * 组内的全部用户
+     */
+    public List<String> findUsers(String group) {
+        Snapshot current = snapshot;
+        int[] members = current.members.getOrDefault(group, NO_MEMBERS);
+        List<String> users = new ArrayList<>(members.length);
+        for (int id : members) {
+            users.add(current.users[id]);
+        }
+        return users;
+    }
+
+    /**
+     * 用户所在的组
+     */
+    public List<String> findGroups(String username) {
+        return Collections.unmodifiableList(Arrays.asList(snapshot.groupsOfUser.getOrDefault(username, NO_GROUPS)));
+    }
+
+    /**
+     * 引擎查询用户的组，不在索引中的用户(UserDetailsService不可监听时)直接加载
+     */
+    @Override
+    public List<String> getUserGroups(String username) {
+        String[] groups = snapshot.groupsOfUser.get(username);
+        if (groups == null) {
+            groups = loadGroups(username, new HashMap<>());
+        }
+        return groups == null ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(groups));
+    }
+
+    @Override
+    public List<String> getUserRoles(String username) {
+        return userDetailsService.loadUserByUsername(username).getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .filter(authority -> authority.startsWith(ROLE_PREFIX))
+                .map(authority -> authority.substring(ROLE_PREFIX.length()))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<String> getGroups() {
+        return new ArrayList<>(new TreeSet<>(snapshot.members.keySet()));
+    }
+
+    @Override
+    public List<String> getUsers() {
+        return new ArrayList<>(new TreeSet<>(snapshot.userIds.keySet()));
+    }
+
+    public boolean isMember(String username, String group) {
+        Snapshot current = snapshot;
+        Integer id = current.userIds.get(username);
+        return id != null && Arrays.binarySearch(current.members.getOrDefault(group, NO_MEMBERS), id) >= 0;
+    }
+
+    public int groupSize(String group) {
+        return snapshot.members.getOrDefault(group, NO_MEMBERS).length;
+    }
+
+    /**
+     * 根据用户名全量重建索引
+     */
+    public synchronized void rebuild(Collection<String> usernames) {
+        String[] users = new String[Math.max(16, usernames.size())];
+        Map<String, Integer> userIds = new HashMap<>(usernames.size() * 2);
+        Map<String, String[]> groupsOfUser = new HashMap<>(usernames.size() * 2);
+        Map<String, List<Integer>> memberLists = new HashMap<>();
+        Map<String, String> internedGroups = new HashMap<>();
+
+        int size = 0;
+        for (String username : usernames) {
+            String[] groups = loadGroups(username, internedGroups);
+            if (groups == null) {
+                continue;
+            }
+            int id = size++;
+            users[id] = username;
+            userIds.put(username, id);
+            groupsOfUser.put(username, groups);
+            for (String group : groups) {
+                memberLists.computeIfAbsent(group, key -> new ArrayList<>()).add(id);
+            }
+        }
+
+        Map<String, int[]> members = new HashMap<>(memberLists.size() * 2);
+        memberLists.forEach((group, ids) -> members.put(group, ids.stream().mapToInt(Integer::intValue).toArray()));
+        snapshot = new Snapshot(users, size, userIds, groupsOfUser, members);
+        log.info("> Group membership index built: {} users, {} groups", size, members.size());
+    }
+
+    /**
+     * 单个用户变更后更新索引，只复制受影响的组
+     */
+    public synchronized void refreshUser(String username) {
+        Snapshot current = snapshot;
+        Map<String, String> internedGroups = new HashMap<>();
+        current.members.keySet().forEach(group -> internedGroups.put(group, group));
+        String[] newGroups = loadGroups(username, internedGroups);
+        String[] oldGroups = current.groupsOfUser.getOrDefault(username, NO_GROUPS);
+
+        String[] users = current.users;
+        int size = current.size;
+        Map<String, Integer> userIds = current.userIds;
+        Integer id = current.userIds.get(username);
+        if (id == null && newGroups != null) {
+            if (size == users.length) {
+                users = Arrays.copyOf(users, users.length * 2);
+            } else {
+                users = users.clone();
+            }
+            id = size++;
+            users[id] = username;
+            userIds = new HashMap<>(current.userIds);
+            userIds.put(username, id);
+        }
+        if (id == null) {
+            return;
+        }
+
+        Map<String, String[]> groupsOfUser = new HashMap<>(current.groupsOfUser);
+        Map<String, int[]> members = new HashMap<>(current.members);
+        for (String group : oldGroups) {
+            int[] remaining = remove(members.getOrDefault(group, NO_MEMBERS), id);
+            if (remaining.length == 0) {
+                members.remove(group);
+            } else {
+                members.put(group, remaining);
+            }
+        }
+        if (newGroups == null) {
+            // 用户已删除：编号作废，不再复用
+            groupsOfUser.remove(username);
+            users = users.clone();
+            users[id] = null;
+            userIds = new HashMap<>(userIds);
+            userIds.remove(username);
+        } else {
+            groupsOfUser.put(username, newGroups);
+            for (String group : newGroups) {
+                members.put(group, insert(members.getOrDefault(group, NO_MEMBERS), id));
+            }
+        }
+        snapshot = new Snapshot(users, size, userIds, groupsOfUser, members);
+    }
+
+    /**
+     * 加载用户的组，用户不存在时返回null
+     */
+    private String[] loadGroups(String username, Map<String, String> internedGroups) {
+        UserDetails user;
+        try {
+            user = userDetailsService.loadUserByUsername(username);
+        } catch (UsernameNotFoundException e) {
+            return null;
+        }
+        return user.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .filter(authority -> authority.startsWith(GROUP_PREFIX))
+                .map(authority -> internedGroups.computeIfAbsent(authority.substring(GROUP_PREFIX.length()), group -> group))
+                .distinct()
+                .toArray(String[]::new);
+    }
+
+    private static int[] insert(int[] sorted, int id) {
+        int pos = Arrays.binarySearch(sorted, id);
+        if (pos >= 0) {
+            return sorted;
+        }
+        pos = -pos - 1;
+        int[] result = new int[sorted.length + 1];
+        System.arraycopy(sorted, 0, result, 0, pos);
+        result[pos] = id;
+        System.arraycopy(sorted, pos, result, pos + 1, sorted.length - pos);
+        return result;
+    }
+
+    private static int[] remove(int[] sorted, int id) {
+        int pos = Arrays.binarySearch(sorted, id);
+        if (pos < 0) {
+            return sorted;
+        }
+        int[] result = new int[sorted.length - 1];
+        System.arraycopy(sorted, 0, result, 0, pos);
+        System.arraycopy(sorted, pos + 1, result, pos, sorted.length - pos - 1);
+        return result;
+    }
+
+    /**
+     * 索引的不可变快照，创建后不再修改
+     */
+    private static final class Snapshot {
+
+        private final String[] users;
+
+        private final int size;
+
+        private final Map<String, Integer> userIds;
+
+        private final Map<String, String[]> groupsOfUser;
+
+        private final Map<String, int[]> members;
+
+        private Snapshot(String[] users, int size, Map<String, Integer> userIds,
+                         Map<String, String[]> groupsOfUser, Map<String, int[]> members) {
+            this.users = users;
+            this.size = size;
+            this.userIds = userIds;
+            this.groupsOfUser = groupsOfUser;
+            this.members = members;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.activity.identity;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 用户变更时通知监听者的InMemoryUserDetailsManager，用于让用户相关的缓存及时失效
+ */
+public class ObservableUserDetailsManager extends InMemoryUserDetailsManager {
+
+    private final List<UserChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final Set<String> usernames = ConcurrentHashMap.newKeySet();
+
+    public void addListener(UserChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 全部用户名，InMemoryUserDetailsManager本身不提供遍历用户的方法
+     */
+    public Set<String> getUsernames() {
+        return Collections.unmodifiableSet(usernames);
+    }
+
+    @Override
+    public void createUser(UserDetails user) {
+        super.createUser(user);
+        usernames.add(user.getUsername());
+        fireUserChanged(user.getUsername());
+    }
+
+    @Override
+    public void updateUser(UserDetails user) {
+        super.updateUser(user);
+        fireUserChanged(user.getUsername());
+    }
+
+    @Override
+    public void deleteUser(String username) {
+        super.deleteUser(username);
+        usernames.remove(username);
+        fireUserChanged(username);
+    }
+
+    @Override
+    public void changePassword(String oldPassword, String newPassword) {
+        super.changePassword(oldPassword, newPassword);
+        Authentication currentUser = SecurityContextHolder.getContext().getAuthentication();
+        if (currentUser != null) {
+            fireUserChanged(currentUser.getName());
+        }
+    }
+
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        UserDetails updated = super.updatePassword(user, newPassword);
+        fireUserChanged(user.getUsername());
+        return updated;
+    }
+
+    private void fireUserChanged(String username) {
+        for (UserChangeListener listener : listeners) {
+            listener.onUserChanged(username);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.activity.identity;
+
+/**
+ * 用户新增、修改、删除后的回调
+ */
+public interface UserChangeListener {
+
+    void onUserChanged(String username);
+}
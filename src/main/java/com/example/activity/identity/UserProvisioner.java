@@ -0,0 +1,102 @@
+package com.example.activity.identity;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 从文件加载用户、角色和组
+ * 每行格式：用户名,密码,角色或组...，#开头为注释
+ * 明文密码在有界线程池中并行加密；{bcrypt}等已带加密方式前缀的密码直接使用
+ */
+@Slf4j
+public class UserProvisioner {
+
+    /**
+     * DelegatingPasswordEncoder的加密方式前缀，如{bcrypt}、{noop}
+     */
+    private static final Pattern ENCODED_PASSWORD = Pattern.compile("^\\{[^}]+}.*");
+
+    private final PasswordEncoder passwordEncoder;
+
+    private final int hashThreads;
+
+    public UserProvisioner(PasswordEncoder passwordEncoder, int hashThreads) {
+        this.passwordEncoder = passwordEncoder;
+        this.hashThreads = Math.max(1, hashThreads);
+    }
+
+    public List<UserDetails> load(Resource resource) {
+        long start = System.currentTimeMillis();
+        List<String[]> rows = readRows(resource);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(hashThreads, Math.max(1, rows.size())));
+        try {
+            List<Future<UserDetails>> futures = new ArrayList<>(rows.size());
+            for (String[] row : rows) {
+                futures.add(executor.submit(() -> toUser(row)));
+            }
+            List<UserDetails> users = new ArrayList<>(rows.size());
+            for (Future<UserDetails> future : futures) {
+                users.add(future.get());
+            }
+            log.info("> Provisioned {} users from {} in {}ms", users.size(), resource.getDescription(),
+                    System.currentTimeMillis() - start);
+            return users;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("User provisioning interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("User provisioning failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private UserDetails toUser(String[] row) {
+        String password = row[1];
+        String encoded = ENCODED_PASSWORD.matcher(password).matches() ? password : passwordEncoder.encode(password);
+        List<String> authStrList = Arrays.asList(Arrays.copyOfRange(row, 2, row.length));
+        log.debug("> Registering new user: {} with the following Authorities[{}]", row[0], authStrList);
+        return new User(row[0], encoded,
+                authStrList.stream().map(SimpleGrantedAuthority::new).collect(Collectors.toList()));
+    }
+
+    private static List<String[]> readRows(Resource resource) {
+        List<String[]> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] row = Arrays.stream(line.split(",")).map(String::trim).toArray(String[]::new);
+                if (row.length < 2 || row[0].isEmpty()) {
+                    throw new IllegalStateException("Invalid user definition at line " + lineNumber + " of " + resource.getDescription());
+                }
+                rows.add(row);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read users from " + resource.getDescription(), e);
+        }
+        return rows;
+    }
+}
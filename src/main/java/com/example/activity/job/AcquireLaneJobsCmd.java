@@ -0,0 +1,45 @@
+package com.example.activity.job;
+
+import org.activiti.engine.impl.interceptor.Command;
+import org.activiti.engine.impl.interceptor.CommandContext;
+import org.activiti.engine.impl.persistence.entity.JobEntity;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 锁定一个执行队列查到的候选任务，与引擎的AcquireJobsCmd相同：设置锁定者和锁定到期时间，
+ * 提交时按版本号更新，其他节点已锁定同一任务时整个命令因乐观锁冲突失败
+ */
+class AcquireLaneJobsCmd implements Command<List<JobEntity>> {
+
+    private final List<String> jobIds;
+
+    private final String lockOwner;
+
+    private final int lockTimeMillis;
+
+    AcquireLaneJobsCmd(List<String> jobIds, String lockOwner, int lockTimeMillis) {
+        this.jobIds = jobIds;
+        this.lockOwner = lockOwner;
+        this.lockTimeMillis = lockTimeMillis;
+    }
+
+    @Override
+    public List<JobEntity> execute(CommandContext commandContext) {
+        Date lockExpirationTime = new Date(commandContext.getProcessEngineConfiguration().getClock().getCurrentTime().getTime()
+                + lockTimeMillis);
+        List<JobEntity> jobs = new ArrayList<>(jobIds.size());
+        for (String jobId : jobIds) {
+            JobEntity job = commandContext.getJobEntityManager().findById(jobId);
+            if (job == null || job.getLockExpirationTime() != null) {
+                continue;
+            }
+            job.setLockOwner(lockOwner);
+            job.setLockExpirationTime(lockExpirationTime);
+            jobs.add(job);
+        }
+        return jobs;
+    }
+}
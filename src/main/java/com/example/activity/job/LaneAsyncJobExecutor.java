@@ -0,0 +1,314 @@
+package com.example.activity.job;
+
+import com.example.activity.config.AsyncExecutorProperties;
+import com.example.activity.metrics.EngineMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.activiti.engine.ActivitiOptimisticLockingException;
+import org.activiti.engine.impl.asyncexecutor.DefaultAsyncJobExecutor;
+import org.activiti.engine.impl.context.Context;
+import org.activiti.engine.impl.persistence.entity.JobEntity;
+import org.activiti.engine.runtime.Job;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按流程key分队列的异步任务执行器
+ * 每个队列有独立的获取线程、有界队列和线程池：获取时只查询属于本队列流程的未锁定任务，
+ * 一个流程积压大量任务时只占满自己的队列，不影响其他队列的获取和执行；队列内按先进先出执行
+ */
+@Slf4j
+public class LaneAsyncJobExecutor extends DefaultAsyncJobExecutor {
+
+    private static final String DEFAULT_LANE = "default";
+
+    private final AsyncExecutorProperties properties;
+
+    private final EngineMetrics engineMetrics;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final List<JobLane> lanes = new ArrayList<>();
+
+    private final Map<String, JobLane> lanesByProcessKey = new HashMap<>();
+
+    private final JobLane defaultLane;
+
+    public LaneAsyncJobExecutor(AsyncExecutorProperties properties, EngineMetrics engineMetrics, JdbcTemplate jdbcTemplate) {
+        this.properties = properties;
+        this.engineMetrics = engineMetrics;
+        this.jdbcTemplate = jdbcTemplate;
+        setMaxAsyncJobsDuePerAcquisition(properties.getLockSize());
+        setMaxTimerJobsPerAcquisition(properties.getTimerLockSize());
+        setAsyncJobLockTimeInMillis(properties.getAsyncJobLockTimeMillis());
+        setTimerLockTimeInMillis(properties.getTimerLockTimeMillis());
+        setDefaultAsyncJobAcquireWaitTimeInMillis(properties.getAcquireWaitTimeMillis());
+        setDefaultTimerJobAcquireWaitTimeInMillis(properties.getTimerAcquireWaitTimeMillis());
+        setDefaultQueueSizeFullWaitTimeInMillis(properties.getQueueFullWaitTimeMillis());
+        setRetryWaitTimeInMillis(properties.getRetryWaitTimeMillis());
+
+        List<String> assignedKeys = new ArrayList<>();
+        for (Map.Entry<String, AsyncExecutorProperties.Lane> entry : properties.getLanes().entrySet()) {
+            if (entry.getValue().getProcessKeys().isEmpty()) {
+                log.warn("> Async job lane {} has no process keys, ignored", entry.getKey());
+                continue;
+            }
+            JobLane lane = new JobLane(entry.getKey(), entry.getValue(), entry.getValue().getProcessKeys(), false);
+            lanes.add(lane);
+            for (String processKey : entry.getValue().getProcessKeys()) {
+                lanesByProcessKey.put(processKey, lane);
+                assignedKeys.add(processKey);
+            }
+        }
+        defaultLane = new JobLane(DEFAULT_LANE, properties.getDefaultLane(), assignedKeys, true);
+        lanes.add(defaultLane);
+    }
+
+    @Override
+    public boolean executeAsyncJob(Job job) {
+        if (isMessageQueueMode || !isActive) {
+            return super.executeAsyncJob(job);
+        }
+        JobLane lane = laneFor(job);
+        Runnable runnable = createRunnableForJob(job);
+        long queuedAt = System.nanoTime();
+        try {
+            lane.executor.execute(() -> {
+                engineMetrics.recordJobQueueWait(lane.name, System.nanoTime() - queuedAt);
+                runnable.run();
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            // 队列已满，解除锁定后由本节点或其他节点稍后重新获取
+            engineMetrics.countJobRejected(lane.name);
+            if (Context.getCommandContext() == null) {
+                unacquire(job);
+            } else {
+                // 引擎在新建任务的事务提交前交来的任务，此时在新事务中还读不到，由本队列的获取线程稍后解除锁定
+                lane.rejected.add((JobEntity) job);
+            }
+            return false;
+        }
+    }
+
+    @Override
+    protected void initAsyncJobExecutionThreadPool() {
+        for (JobLane lane : lanes) {
+            lane.start();
+        }
+        executorService = defaultLane.executor;
+    }
+
+    @Override
+    protected void stopExecutingAsyncJobs() {
+        for (JobLane lane : lanes) {
+            lane.stop();
+        }
+        executorService = null;
+    }
+
+    @Override
+    protected void startJobAcquisitionThread() {
+        for (JobLane lane : lanes) {
+            lane.stopped = false;
+            lane.acquisitionThread = new Thread(lane::acquire, "activiti-acquire-" + lane.name);
+            lane.acquisitionThread.start();
+        }
+    }
+
+    @Override
+    protected void stopJobAcquisitionThread() {
+        for (JobLane lane : lanes) {
+            lane.stopAcquisition();
+        }
+    }
+
+    private JobLane laneFor(Job job) {
+        String processDefinitionId = job.getProcessDefinitionId();
+        if (processDefinitionId == null) {
+            return defaultLane;
+        }
+        // 流程定义id的格式为 key:version:id
+        return lanesByProcessKey.getOrDefault(processDefinitionId.split(":")[0], defaultLane);
+    }
+
+    /**
+     * 匹配流程key所有版本的流程定义id，key中的_和%按字面匹配，配合 like ? escape '!' 使用
+     */
+    public static String processDefinitionIdPattern(String processKey) {
+        return processKey.replace("!", "!!").replace("_", "!_").replace("%", "!%") + ":%";
+    }
+
+    private void unacquire(Job job) {
+        processEngineConfiguration.getCommandExecutor().execute(context -> {
+            context.getJobManager().unacquire(job);
+            return null;
+        });
+    }
+
+    /**
+     * 一个执行队列：候选任务查询、获取线程和线程池
+     */
+    private final class JobLane {
+
+        private final String name;
+
+        private final AsyncExecutorProperties.Lane config;
+
+        private final String candidateSql;
+
+        private final Object[] candidateArgs;
+
+        private final Object monitor = new Object();
+
+        /**
+         * 引擎直接交来但因队列已满被拒绝、还未解除锁定的任务
+         */
+        private final Queue<JobEntity> rejected = new ConcurrentLinkedQueue<>();
+
+        private volatile boolean stopped;
+
+        private Thread acquisitionThread;
+
+        private volatile ThreadPoolExecutor executor;
+
+        /**
+         * @param processKeys 默认队列时为其他队列已占用的流程key，否则为本队列的流程key
+         */
+        JobLane(String name, AsyncExecutorProperties.Lane config, List<String> processKeys, boolean excludeKeys) {
+            this.name = name;
+            this.config = config;
+            StringBuilder sql = new StringBuilder("select ID_ from ACT_RU_JOB where LOCK_EXP_TIME_ is null");
+            List<Object> args = new ArrayList<>();
+            if (excludeKeys) {
+                if (!processKeys.isEmpty()) {
+                    sql.append(" and (PROC_DEF_ID_ is null or (");
+                    for (int i = 0; i < processKeys.size(); i++) {
+                        sql.append(i == 0 ? "" : " and ").append("PROC_DEF_ID_ not like ? escape '!'");
+                        args.add(processDefinitionIdPattern(processKeys.get(i)));
+                    }
+                    sql.append("))");
+                }
+            } else {
+                sql.append(" and (");
+                for (int i = 0; i < processKeys.size(); i++) {
+                    sql.append(i == 0 ? "" : " or ").append("PROC_DEF_ID_ like ? escape '!'");
+                    args.add(processDefinitionIdPattern(processKeys.get(i)));
+                }
+                sql.append(")");
+            }
+            sql.append(" limit ").append(properties.getLockSize());
+            this.candidateSql = sql.toString();
+            this.candidateArgs = args.toArray();
+        }
+
+        void start() {
+            AtomicInteger threadNumber = new AtomicInteger();
+            BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(config.getQueueSize(), true);
+            executor = new ThreadPoolExecutor(config.getThreads(), config.getThreads(), 0L, TimeUnit.MILLISECONDS, queue,
+                    runnable -> new Thread(runnable, "activiti-job-" + name + "-" + threadNumber.incrementAndGet()));
+            engineMetrics.registerJobQueue(name, queue);
+            log.info("> Async job lane {} started with {} threads, queue size {}", name, config.getThreads(), config.getQueueSize());
+        }
+
+        void stop() {
+            if (executor == null) {
+                return;
+            }
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(secondsToWaitOnShutdown, TimeUnit.SECONDS)) {
+                    log.warn("> Async job lane {} did not terminate in {} seconds", name, secondsToWaitOnShutdown);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+
+        /**
+         * 获取线程：查询本队列的候选任务并锁定，交给本队列的线程池执行
+         */
+        void acquire() {
+            while (!stopped) {
+                long millisToWait;
+                try {
+                    releaseRejected();
+                    long start = System.nanoTime();
+                    List<String> candidates = jdbcTemplate.queryForList(candidateSql, String.class, candidateArgs);
+                    List<JobEntity> jobs = candidates.isEmpty() ? Collections.emptyList()
+                            : processEngineConfiguration.getCommandExecutor()
+                            .execute(new AcquireLaneJobsCmd(candidates, getLockOwner(), getAsyncJobLockTimeInMillis()));
+                    engineMetrics.recordJobAcquisition(name, System.nanoTime() - start, jobs.size());
+
+                    boolean allOffered = true;
+                    for (JobEntity job : jobs) {
+                        allOffered &= executeAsyncJob(job);
+                    }
+                    // 取满一批时可能还有任务，立即再次获取
+                    millisToWait = candidates.size() >= properties.getLockSize() ? 0 : getDefaultAsyncJobAcquireWaitTimeInMillis();
+                    if (!allOffered) {
+                        millisToWait = getDefaultQueueSizeFullWaitTimeInMillis();
+                    }
+                } catch (ActivitiOptimisticLockingException e) {
+                    // 其他节点同时锁定了其中的任务
+                    log.debug("> Async job lane {} acquisition conflicted with another node", name);
+                    millisToWait = getRetryWaitTimeInMillis();
+                } catch (RuntimeException e) {
+                    log.error("> Async job lane {} acquisition failed", name, e);
+                    millisToWait = getDefaultAsyncJobAcquireWaitTimeInMillis();
+                }
+                if (millisToWait > 0) {
+                    synchronized (monitor) {
+                        if (!stopped) {
+                            try {
+                                monitor.wait(millisToWait);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                return;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * 解除被拒绝任务的锁定。新建任务的事务还未提交时读不到任务，留到下一轮；
+         * 锁定已到期的不再处理，由引擎的过期任务重置线程解除锁定
+         */
+        private void releaseRejected() {
+            for (int i = rejected.size(); i > 0; i--) {
+                JobEntity job = rejected.poll();
+                if (job == null) {
+                    break;
+                }
+                try {
+                    unacquire(job);
+                } catch (RuntimeException e) {
+                    Date lockExpirationTime = job.getLockExpirationTime();
+                    if (lockExpirationTime != null && lockExpirationTime.getTime() > System.currentTimeMillis()) {
+                        rejected.add(job);
+                    }
+                }
+            }
+        }
+
+        void stopAcquisition() {
+            synchronized (monitor) {
+                stopped = true;
+                monitor.notifyAll();
+            }
+            if (acquisitionThread != null) {
+                try {
+                    acquisitionThread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                acquisitionThread = null;
+            }
+        }
+    }
+}
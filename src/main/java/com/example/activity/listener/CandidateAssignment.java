@@ -0,0 +1,38 @@
+package com.example.activity.listener;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 任务的候选人和候选组，创建后不可修改
+ */
+public final class CandidateAssignment {
+
+    public static final CandidateAssignment EMPTY = new CandidateAssignment(Collections.emptyList(), Collections.emptyList());
+
+    private final List<String> users;
+
+    private final List<String> groups;
+
+    public CandidateAssignment(List<String> users, List<String> groups) {
+        this.users = Collections.unmodifiableList(users);
+        this.groups = Collections.unmodifiableList(groups);
+    }
+
+    public List<String> getUsers() {
+        return users;
+    }
+
+    public List<String> getGroups() {
+        return groups;
+    }
+
+    public boolean isEmpty() {
+        return users.isEmpty() && groups.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "CandidateAssignment{users=" + users + ", groups=" + groups + "}";
+    }
+}
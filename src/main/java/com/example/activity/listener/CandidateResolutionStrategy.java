@@ -0,0 +1,14 @@
+package com.example.activity.listener;
+
+/**
+ * 任务候选人的计算方式，MyTaskListener通过它给新建的任务添加候选人
+ */
+public interface CandidateResolutionStrategy {
+
+    /**
+     * @param processKey 流程定义key
+     * @param taskDefinitionKey 任务节点id
+     * @return 候选人和候选组，没有匹配时返回CandidateAssignment.EMPTY
+     */
+    CandidateAssignment resolve(String processKey, String taskDefinitionKey);
+}
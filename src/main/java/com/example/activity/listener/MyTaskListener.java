@@ -1,21 +1,63 @@
 package com.example.activity.listener;
 
+import com.example.activity.metrics.EngineMetrics;
+import com.example.activity.util.SpringContextHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.activiti.engine.delegate.DelegateTask;
 import org.activiti.engine.delegate.TaskListener;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 /**
  * 当到达经理审批任务节点时，进行动态添加候选组成员
+ * 在bpmn中通过 activiti:delegateExpression="${myTaskListener}" 引用该Spring Bean，
+ * 候选人由CandidateResolutionStrategy按规则表计算。
+ * 之前部署的流程定义使用 activiti:class 引用，引擎用new创建监听器，注入的字段为null，此时从SpringContextHolder获取
  */
 @Slf4j
 @Component
 public class MyTaskListener implements TaskListener {
+
+    @Autowired
+    private CandidateResolutionStrategy candidateResolutionStrategy;
+
+    @Autowired
+    private EngineMetrics engineMetrics;
+
     @Override
     public void notify(DelegateTask delegateTask) {
-        delegateTask.addCandidateUser("rose");//分配组任务的办理人
-        delegateTask.addCandidateUser("tom");
-        delegateTask.addCandidateUser("jack");
+        long start = System.nanoTime();
+        try {
+            addCandidates(delegateTask);
+        } finally {
+            engineMetrics().recordListener("MyTaskListener", System.nanoTime() - start);
+        }
+    }
+
+    private void addCandidates(DelegateTask delegateTask) {
+        // 流程定义id的格式为 key:version:id
+        String processKey = delegateTask.getProcessDefinitionId().split(":")[0];
+        CandidateAssignment assignment = candidateResolutionStrategy().resolve(processKey, delegateTask.getTaskDefinitionKey());
+        if (assignment.isEmpty()) {
+            log.warn("> No candidate rule for {}:{}", processKey, delegateTask.getTaskDefinitionKey());
+            return;
+        }
+        //分配组任务的办理人
+        if (!assignment.getUsers().isEmpty()) {
+            delegateTask.addCandidateUsers(assignment.getUsers());
+        }
+        if (!assignment.getGroups().isEmpty()) {
+            delegateTask.addCandidateGroups(assignment.getGroups());
+        }
+    }
+
+    private CandidateResolutionStrategy candidateResolutionStrategy() {
+        return candidateResolutionStrategy != null
+                ? candidateResolutionStrategy : SpringContextHolder.getBean(CandidateResolutionStrategy.class);
+    }
+
+    private EngineMetrics engineMetrics() {
+        return engineMetrics != null ? engineMetrics : SpringContextHolder.getBean(EngineMetrics.class);
     }
 }
@@ -0,0 +1,89 @@
+package com.example.activity.listener;
+
+import com.example.activity.config.CandidateRuleProperties;
+import com.example.activity.identity.GroupMembershipIndex;
+import com.example.activity.identity.ObservableUserDetailsManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按规则表计算候选人
+ * 规则中的候选人恰好是某个组的全部成员时改为添加该候选组，一个任务只写一条identity link；
+ * 计算结果按 流程key:任务节点id 缓存，用户变更时清空
+ */
+@Slf4j
+@Component
+public class RuleTableCandidateStrategy implements CandidateResolutionStrategy {
+
+    private static final String ANY_TASK = "*";
+
+    @Autowired
+    private CandidateRuleProperties candidateRuleProperties;
+
+    @Autowired
+    private GroupMembershipIndex groupMembershipIndex;
+
+    @Autowired
+    @Qualifier("myUserDetailsService")
+    private UserDetailsService userDetailsService;
+
+    private Map<String, CandidateRuleProperties.Rule> rules;
+
+    private final Map<String, CandidateAssignment> resolved = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        Map<String, CandidateRuleProperties.Rule> table = new HashMap<>();
+        for (CandidateRuleProperties.Rule rule : candidateRuleProperties.getRules()) {
+            table.put(ruleKey(rule.getProcessKey(), rule.getTaskDefinitionKey()), rule);
+        }
+        rules = table;
+        if (userDetailsService instanceof ObservableUserDetailsManager) {
+            ((ObservableUserDetailsManager) userDetailsService).addListener(username -> resolved.clear());
+        }
+        log.info("> Loaded {} candidate rules", table.size());
+    }
+
+    @Override
+    public CandidateAssignment resolve(String processKey, String taskDefinitionKey) {
+        return resolved.computeIfAbsent(ruleKey(processKey, taskDefinitionKey), key -> {
+            CandidateRuleProperties.Rule rule = rules.get(key);
+            if (rule == null) {
+                rule = rules.get(ruleKey(processKey, ANY_TASK));
+            }
+            return rule == null ? CandidateAssignment.EMPTY : compact(rule);
+        });
+    }
+
+    /**
+     * 候选人集合与某个组的成员完全相同时，用候选组代替这些候选人
+     */
+    private CandidateAssignment compact(CandidateRuleProperties.Rule rule) {
+        Set<String> users = new LinkedHashSet<>(rule.getUsers());
+        Set<String> groups = new LinkedHashSet<>(rule.getGroups());
+        if (!users.isEmpty()) {
+            String first = users.iterator().next();
+            for (String group : groupMembershipIndex.findGroups(first)) {
+                if (groupMembershipIndex.groupSize(group) == users.size()
+                        && users.stream().allMatch(user -> groupMembershipIndex.isMember(user, group))) {
+                    log.info("> Candidates {} of {} replaced by group {}", users, rule.getProcessKey(), group);
+                    users.clear();
+                    groups.add(group);
+                    break;
+                }
+            }
+        }
+        return new CandidateAssignment(new ArrayList<>(users), new ArrayList<>(groups));
+    }
+
+    private static String ruleKey(String processKey, String taskDefinitionKey) {
+        return processKey + ":" + taskDefinitionKey;
+    }
+}
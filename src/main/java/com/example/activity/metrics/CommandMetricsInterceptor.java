@@ -0,0 +1,46 @@
+package com.example.activity.metrics;
+
+import org.activiti.engine.impl.interceptor.AbstractCommandInterceptor;
+import org.activiti.engine.impl.interceptor.Command;
+import org.activiti.engine.impl.interceptor.CommandConfig;
+
+/**
+ * 记录每个顶层引擎命令的耗时和执行的SQL语句数，嵌套命令计入外层命令
+ */
+public class CommandMetricsInterceptor extends AbstractCommandInterceptor {
+
+    private static final ThreadLocal<int[]> DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+
+    private final EngineMetrics engineMetrics;
+
+    public CommandMetricsInterceptor(EngineMetrics engineMetrics) {
+        this.engineMetrics = engineMetrics;
+    }
+
+    @Override
+    public <T> T execute(CommandConfig config, Command<T> command) {
+        int[] depth = DEPTH.get();
+        if (depth[0]++ > 0) {
+            try {
+                return next.execute(config, command);
+            } finally {
+                depth[0]--;
+            }
+        }
+
+        int statementsBefore = SqlStatementCounter.current();
+        long start = System.nanoTime();
+        try {
+            return next.execute(config, command);
+        } finally {
+            depth[0]--;
+            engineMetrics.recordCommand(commandName(command), System.nanoTime() - start,
+                    SqlStatementCounter.current() - statementsBefore);
+        }
+    }
+
+    private static String commandName(Command<?> command) {
+        String name = command.getClass().getSimpleName();
+        return name.isEmpty() ? command.getClass().getName() : name;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.activity.metrics;
+
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.delegate.event.ActivitiEntityEvent;
+import org.activiti.engine.delegate.event.ActivitiEvent;
+import org.activiti.engine.delegate.event.ActivitiEventListener;
+import org.activiti.engine.delegate.event.ActivitiEventType;
+import org.activiti.engine.task.Task;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * 按流程key、任务节点id统计任务和流程事件
+ */
+@Component
+public class EngineEventMetricsListener implements ActivitiEventListener {
+
+    @Autowired
+    private EngineMetrics engineMetrics;
+
+    @Autowired
+    private RuntimeService runtimeService;
+
+    @PostConstruct
+    public void register() {
+        runtimeService.addEventListener(this,
+                ActivitiEventType.TASK_CREATED, ActivitiEventType.TASK_ASSIGNED, ActivitiEventType.TASK_COMPLETED,
+                ActivitiEventType.PROCESS_STARTED, ActivitiEventType.PROCESS_COMPLETED, ActivitiEventType.PROCESS_CANCELLED);
+    }
+
+    @Override
+    public void onEvent(ActivitiEvent event) {
+        String processKey = EngineMetrics.processKey(event.getProcessDefinitionId());
+        switch (event.getType()) {
+            case TASK_CREATED:
+            case TASK_ASSIGNED:
+            case TASK_COMPLETED:
+                Task task = (Task) ((ActivitiEntityEvent) event).getEntity();
+                engineMetrics.countTaskEvent(event.getType().name(), processKey, task.getTaskDefinitionKey());
+                if (event.getType() == ActivitiEventType.TASK_COMPLETED && task.getCreateTime() != null) {
+                    engineMetrics.recordTaskCompleted(processKey, task.getTaskDefinitionKey(),
+                            System.currentTimeMillis() - task.getCreateTime().getTime());
+                }
+                break;
+            default:
+                engineMetrics.countProcessEvent(event.getType().name(), processKey);
+        }
+    }
+
+    @Override
+    public boolean isFailOnException() {
+        return false;
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.activity.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 引擎热路径上的计时器和计数器
+ * 同一名称和标签的Meter只创建一次并缓存，记录时不再创建Builder和Tag对象；
+ * 只发布p50/p99两个分位数，不发布直方图桶
+ */
+@Component
+public class EngineMetrics {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, Timer> commandTimers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, DistributionSummary> statementSummaries = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Timer> listenerTimers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Timer> taskTimers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Counter> eventCounters = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Timer> jobTimers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Timer> claimTimers = new ConcurrentHashMap<>();
+
+    /**
+     * 引擎命令耗时，command为命令类名
+     */
+    public void recordCommand(String command, long nanos, int statements) {
+        commandTimers.computeIfAbsent(command, key -> Timer.builder("demo.engine.command")
+                .description("引擎命令耗时")
+                .tag("command", key)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+        statementSummaries.computeIfAbsent(command, key -> DistributionSummary.builder("demo.engine.command.statements")
+                .description("每个引擎命令(事务)执行的SQL语句数")
+                .tag("command", key)
+                .register(meterRegistry))
+                .record(statements);
+    }
+
+    /**
+     * 任务监听器的执行耗时
+     */
+    public void recordListener(String listener, long nanos) {
+        listenerTimers.computeIfAbsent(listener, key -> Timer.builder("demo.engine.listener")
+                .description("任务监听器耗时")
+                .tag("listener", key)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 任务从创建到完成的耗时，按流程key和任务节点id统计
+     */
+    public void recordTaskCompleted(String processKey, String taskDefinitionKey, long millis) {
+        taskTimers.computeIfAbsent(processKey + ":" + taskDefinitionKey, key -> Timer.builder("demo.engine.task.duration")
+                .description("任务从创建到完成的耗时")
+                .tag("process", processKey)
+                .tag("task", taskDefinitionKey == null ? "" : taskDefinitionKey)
+                .register(meterRegistry))
+                .record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    public void countTaskEvent(String event, String processKey, String taskDefinitionKey) {
+        String task = taskDefinitionKey == null ? "" : taskDefinitionKey;
+        eventCounters.computeIfAbsent("task:" + event + ":" + processKey + ":" + task,
+                key -> meterRegistry.counter("demo.engine.task.events", "event", event, "process", processKey, "task", task))
+                .increment();
+    }
+
+    public void countProcessEvent(String event, String processKey) {
+        eventCounters.computeIfAbsent("process:" + event + ":" + processKey,
+                key -> meterRegistry.counter("demo.engine.process.events", "event", event, "process", processKey))
+                .increment();
+    }
+
+    /**
+     * 异步任务执行器一次获取(查询并锁定)的耗时和获取到的任务数，lane为执行队列名
+     */
+    public void recordJobAcquisition(String lane, long nanos, int jobs) {
+        jobTimers.computeIfAbsent("acquire:" + lane, key -> Timer.builder("demo.engine.job.acquisition")
+                .description("异步任务获取耗时")
+                .tag("lane", lane)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+        eventCounters.computeIfAbsent("job:acquired:" + lane,
+                key -> meterRegistry.counter("demo.engine.job.acquired", "lane", lane))
+                .increment(jobs);
+    }
+
+    /**
+     * 异步任务从进入执行队列到开始执行的等待时间
+     */
+    public void recordJobQueueWait(String lane, long nanos) {
+        jobTimers.computeIfAbsent("wait:" + lane, key -> Timer.builder("demo.engine.job.queue.wait")
+                .description("异步任务在执行队列中的等待时间")
+                .tag("lane", lane)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 执行队列已满、退回数据库等待重新获取的异步任务
+     */
+    public void countJobRejected(String lane) {
+        eventCounters.computeIfAbsent("job:rejected:" + lane,
+                key -> meterRegistry.counter("demo.engine.job.rejected", "lane", lane))
+                .increment();
+    }
+
+    /**
+     * 执行队列的当前长度
+     */
+    public void registerJobQueue(String lane, Collection<?> queue) {
+        Gauge.builder("demo.engine.job.queue.size", queue, Collection::size)
+                .description("异步任务执行队列长度")
+                .tag("lane", lane)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 一次拾取的耗时(含重试)和结果：claimed、already_claimed、not_found、conflict
+     */
+    public void recordClaim(String outcome, long nanos) {
+        claimTimers.computeIfAbsent(outcome, key -> Timer.builder("demo.claim")
+                .description("任务拾取耗时，含乐观锁冲突后的重试")
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 拾取过程中的竞争：retry为乐观锁冲突后的重试，stolen为从其他分片拾取
+     */
+    public void countClaimContention(String kind) {
+        eventCounters.computeIfAbsent("claim:" + kind,
+                key -> meterRegistry.counter("demo.claim.contention", "kind", kind))
+                .increment();
+    }
+
+    /**
+     * 流程定义id的格式为 key:version:id
+     */
+    static String processKey(String processDefinitionId) {
+        if (processDefinitionId == null) {
+            return "";
+        }
+        int end = processDefinitionId.indexOf(':');
+        return end < 0 ? processDefinitionId : processDefinitionId.substring(0, end);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.activity.metrics;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.*;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+import java.util.Properties;
+
+/**
+ * 统计引擎通过MyBatis执行的SQL语句数
+ * 计数保存在当前线程中，只增不减；统计一个命令或一次业务操作的语句数时，取前后两次current()的差
+ */
+@Intercepts({
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class})
+})
+public class SqlStatementCounter implements Interceptor {
+
+    private static final ThreadLocal<int[]> COUNT = ThreadLocal.withInitial(() -> new int[1]);
+
+    /**
+     * 当前线程执行过的SQL语句数，溢出后回绕，两次取值的差仍然正确
+     */
+    public static int current() {
+        return COUNT.get()[0];
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        COUNT.get()[0]++;
+        return invocation.proceed();
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+    }
+}
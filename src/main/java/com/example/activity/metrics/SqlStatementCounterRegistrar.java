@@ -0,0 +1,24 @@
+package com.example.activity.metrics;
+
+import org.activiti.engine.ProcessEngine;
+import org.activiti.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * 引擎创建SqlSessionFactory后再注册SqlStatementCounter，之后打开的会话都会经过该插件
+ */
+@Component
+public class SqlStatementCounterRegistrar {
+
+    @Autowired
+    private ProcessEngine processEngine;
+
+    @PostConstruct
+    public void register() {
+        ProcessEngineConfigurationImpl configuration = (ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration();
+        configuration.getSqlSessionFactory().getConfiguration().addInterceptor(new SqlStatementCounter());
+    }
+}
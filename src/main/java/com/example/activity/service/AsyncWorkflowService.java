@@ -0,0 +1,181 @@
+package com.example.activity.service;
+
+import com.example.activity.config.AsyncWorkflowProperties;
+import com.example.activity.config.ConnectionPoolSizeCheck;
+import com.example.activity.util.SecurityUtil;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.activiti.api.process.model.ProcessInstance;
+import org.activiti.api.process.model.builders.ProcessPayloadBuilder;
+import org.activiti.api.process.runtime.ProcessRuntime;
+import org.activiti.api.runtime.shared.query.Page;
+import org.activiti.api.runtime.shared.query.Pageable;
+import org.activiti.api.task.model.Task;
+import org.activiti.api.task.model.builders.TaskPayloadBuilder;
+import org.activiti.api.task.runtime.TaskRuntime;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 流程和任务操作的异步调用
+ * 调用在独立的线程池(或虚拟线程)中执行，并带上Spring Security和Activiti的当前用户，执行后恢复线程原来的身份；
+ * 同时访问数据库的调用数不超过连接池中常驻后台线程(异步任务执行器、历史写入)用剩的连接数，多出的调用在工作线程中等待，不占用连接
+ */
+@Slf4j
+@Service
+public class AsyncWorkflowService {
+
+    @Autowired
+    private ProcessRuntime processRuntime;
+
+    @Autowired
+    private TaskRuntime taskRuntime;
+
+    @Autowired
+    private SecurityUtil securityUtil;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private AsyncWorkflowProperties properties;
+
+    @Autowired
+    private ConnectionPoolSizeCheck connectionPoolSizeCheck;
+
+    private ExecutorService executor;
+
+    private Semaphore dbPermits;
+
+    private int dbConcurrency;
+
+    @PostConstruct
+    public void init() {
+        executor = createExecutor();
+        int permits = properties.getMaxDbConcurrency() > 0 ? properties.getMaxDbConcurrency()
+                : Math.max(1, connectionPoolSize() - connectionPoolSizeCheck.backgroundConnections());
+        dbConcurrency = permits;
+        dbPermits = new Semaphore(permits, true);
+        log.info("> Async workflow executor started, db concurrency {}", permits);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    /**
+     * 以指定用户身份异步执行
+     */
+    public <T> CompletableFuture<T> supplyAs(String userId, Callable<T> work) {
+        return supply(() -> securityUtil.runAs(userId, work));
+    }
+
+    /**
+     * 以调用线程的当前用户异步执行
+     * 只取调用时的Authentication，在工作线程中放入新建的SecurityContext，调用线程之后修改自己的context不影响异步调用
+     */
+    public <T> CompletableFuture<T> supplyAsCurrentUser(Callable<T> work) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String userId = org.activiti.engine.impl.identity.Authentication.getAuthenticatedUserId();
+        return supply(() -> {
+            SecurityContext previousContext = SecurityContextHolder.getContext();
+            String previousUserId = org.activiti.engine.impl.identity.Authentication.getAuthenticatedUserId();
+            try {
+                SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+                securityContext.setAuthentication(authentication);
+                SecurityContextHolder.setContext(securityContext);
+                org.activiti.engine.impl.identity.Authentication.setAuthenticatedUserId(userId);
+                return work.call();
+            } finally {
+                SecurityContextHolder.setContext(previousContext);
+                org.activiti.engine.impl.identity.Authentication.setAuthenticatedUserId(previousUserId);
+            }
+        });
+    }
+
+    public CompletableFuture<ProcessInstance> start(String userId, String processDefinitionKey, String businessKey,
+                                                    Map<String, Object> variables) {
+        return supplyAs(userId, () -> processRuntime.start(ProcessPayloadBuilder.start()
+                .withProcessDefinitionKey(processDefinitionKey)
+                .withBusinessKey(businessKey)
+                .withVariables(variables)
+                .build()));
+    }
+
+    public CompletableFuture<Page<Task>> tasks(String userId, Pageable pageable) {
+        return supplyAs(userId, () -> taskRuntime.tasks(pageable));
+    }
+
+    public CompletableFuture<Task> claim(String userId, String taskId) {
+        return supplyAs(userId, () -> taskRuntime.claim(TaskPayloadBuilder.claim().withTaskId(taskId).build()));
+    }
+
+    public CompletableFuture<Task> complete(String userId, String taskId) {
+        return supplyAs(userId, () -> taskRuntime.complete(TaskPayloadBuilder.complete().withTaskId(taskId).build()));
+    }
+
+    /**
+     * 同时访问数据库的调用数上限
+     */
+    int dbConcurrency() {
+        return dbConcurrency;
+    }
+
+    private <T> CompletableFuture<T> supply(Callable<T> work) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                dbPermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(e);
+                return;
+            }
+            try {
+                future.complete(work.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                dbPermits.release();
+            }
+        });
+        return future;
+    }
+
+    private ExecutorService createExecutor() {
+        if (properties.isVirtualThreads()) {
+            try {
+                // JDK21的Executors.newVirtualThreadPerTaskExecutor()，通过反射调用以兼容java 8编译
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                log.warn("> Virtual threads not available on this JDK, fall back to {} platform threads", properties.getThreads());
+            }
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(properties.getThreads(),
+                runnable -> new Thread(runnable, "async-workflow-" + threadNumber.incrementAndGet()));
+    }
+
+    private int connectionPoolSize() {
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                return dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+            }
+        } catch (SQLException e) {
+            log.warn("> Cannot read connection pool size", e);
+        }
+        return 10;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.activity.service;
+
+import com.example.activity.dto.TimelineEntry;
+import org.activiti.engine.HistoryService;
+import org.activiti.engine.TaskService;
+import org.activiti.engine.history.HistoricActivityInstance;
+import org.activiti.engine.history.HistoricTaskInstance;
+import org.activiti.engine.impl.persistence.entity.CommentEntity;
+import org.activiti.engine.task.Comment;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * 审批时间线
+ * 流程实例的批注一次查出后在内存中按任务id关联，查询次数与节点数无关；
+ * 只取用户批注(不含附件、候选人变化等事件记录)，默认取每个任务最新的一条，与taskService.getTaskComments相同
+ */
+@Service
+public class AuditTimelineService {
+
+    /**
+     * 一个任务有多条批注时取哪一条
+     */
+    public enum CommentPick {
+        FIRST,
+        LATEST
+    }
+
+    @Autowired
+    private HistoryService historyService;
+
+    @Autowired
+    private TaskService taskService;
+
+    /**
+     * 流程实例的全部节点(含开始、结束等节点)，批注取最新的一条
+     */
+    public List<TimelineEntry> findActivityTimeline(String processInstanceId) {
+        return findActivityTimeline(processInstanceId, CommentPick.LATEST);
+    }
+
+    /**
+     * 流程实例的全部节点(含开始、结束等节点)
+     */
+    public List<TimelineEntry> findActivityTimeline(String processInstanceId, CommentPick pick) {
+        List<HistoricActivityInstance> activities = historyService.createHistoricActivityInstanceQuery()
+                .processInstanceId(processInstanceId)
+                .orderByHistoricActivityInstanceStartTime().asc()
+                .list();
+        Map<String, Comment> comments = findTaskComments(processInstanceId, pick);
+
+        List<TimelineEntry> timeline = new ArrayList<>(activities.size());
+        for (HistoricActivityInstance activity : activities) {
+            TimelineEntry entry = new TimelineEntry();
+            entry.setActivityId(activity.getActivityId());
+            entry.setActivityName(activity.getActivityName());
+            entry.setActivityType(activity.getActivityType());
+            entry.setTaskId(activity.getTaskId());
+            entry.setAssignee(activity.getAssignee());
+            entry.setStartTime(activity.getStartTime());
+            entry.setEndTime(activity.getEndTime());
+            entry.setComment(fullMessage(comments.get(activity.getTaskId())));
+            timeline.add(entry);
+        }
+        return timeline;
+    }
+
+    /**
+     * 流程实例的任务节点(不含开始、结束等节点)，批注取最新的一条
+     */
+    public List<TimelineEntry> findTaskTimeline(String processInstanceId) {
+        return findTaskTimeline(processInstanceId, CommentPick.LATEST);
+    }
+
+    /**
+     * 流程实例的任务节点(不含开始、结束等节点)
+     */
+    public List<TimelineEntry> findTaskTimeline(String processInstanceId, CommentPick pick) {
+        List<HistoricTaskInstance> tasks = historyService.createHistoricTaskInstanceQuery()
+                .processInstanceId(processInstanceId)
+                .orderByHistoricTaskInstanceStartTime().asc()
+                .list();
+        Map<String, Comment> comments = findTaskComments(processInstanceId, pick);
+
+        List<TimelineEntry> timeline = new ArrayList<>(tasks.size());
+        for (HistoricTaskInstance task : tasks) {
+            TimelineEntry entry = new TimelineEntry();
+            entry.setActivityId(task.getTaskDefinitionKey());
+            entry.setActivityName(task.getName());
+            entry.setActivityType("userTask");
+            entry.setTaskId(task.getId());
+            entry.setAssignee(task.getAssignee());
+            entry.setStartTime(task.getStartTime());
+            entry.setEndTime(task.getEndTime());
+            entry.setComment(fullMessage(comments.get(task.getId())));
+            timeline.add(entry);
+        }
+        return timeline;
+    }
+
+    /**
+     * 一次查询流程实例的全部用户批注(按时间倒序)，按任务id保留最早或最新的一条
+     */
+    private Map<String, Comment> findTaskComments(String processInstanceId, CommentPick pick) {
+        Map<String, Comment> result = new HashMap<>();
+        for (Comment comment : taskService.getProcessInstanceComments(processInstanceId, CommentEntity.TYPE_COMMENT)) {
+            if (comment.getTaskId() == null) {
+                continue;
+            }
+            result.merge(comment.getTaskId(), comment, (current, candidate) -> pick(current, candidate, pick));
+        }
+        return result;
+    }
+
+    private static Comment pick(Comment current, Comment candidate, CommentPick pick) {
+        if (current.getTime() == null || candidate.getTime() == null) {
+            return current;
+        }
+        boolean candidateIsLater = candidate.getTime().after(current.getTime());
+        return (pick == CommentPick.LATEST) == candidateIsLater ? candidate : current;
+    }
+
+    private static String fullMessage(Comment comment) {
+        return comment == null ? null : comment.getFullMessage();
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.activity.service;
+
+import com.example.activity.config.BatchApprovalProperties;
+import com.example.activity.dto.BatchApprovalResult;
+import com.example.activity.dto.InboxCursor;
+import com.example.activity.dto.InboxPage;
+import com.example.activity.dto.InboxTask;
+import com.example.activity.util.SecurityUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.activiti.engine.TaskService;
+import org.activiti.engine.task.Task;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量审批：拾取并完成一批任务
+ * 任务按流程实例分组后打包成批，每批一个事务，不同批次在有界线程池中并发执行；
+ * 同一流程实例的任务总在同一批内，并发的批次之间不会更新同一个流程实例。
+ * 某一批失败时整批回滚，再逐个任务重试以得到每个任务的失败原因
+ */
+@Slf4j
+@Service
+public class BatchApprovalService {
+
+    /**
+     * 从待办中收集任务id时每页的条数
+     */
+    private static final int INBOX_PAGE_SIZE = 500;
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private TaskInboxService taskInboxService;
+
+    @Autowired
+    private SecurityUtil securityUtil;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private BatchApprovalProperties properties;
+
+    private TransactionTemplate transactionTemplate;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(properties.getThreads(), properties.getThreads(), 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                runnable -> new Thread(runnable, "batch-approval-" + threadNumber.incrementAndGet()),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    /**
+     * 以userId的身份拾取并完成任务
+     * @param userId 办理人
+     * @param taskIds 任务id
+     * @param comment 审批批注，为空时不添加
+     * @return
+     */
+    public BatchApprovalResult approve(String userId, Collection<String> taskIds, String comment) {
+        long start = System.currentTimeMillis();
+        BatchApprovalResult result = new BatchApprovalResult();
+
+        // 只办理用户是办理人或候选人的任务，与taskRuntime的权限检查一致
+        Map<String, Task> tasks = taskInboxService.findAccessibleTasks(userId, taskIds);
+        for (String taskId : taskIds) {
+            if (!tasks.containsKey(taskId)) {
+                result.getFailures().put(taskId, "任务不存在、已完成或当前用户不是办理人/候选人");
+            }
+        }
+
+        List<Future<BatchApprovalResult>> futures = new ArrayList<>();
+        for (List<Task> chunk : chunkByProcessInstance(tasks.values())) {
+            futures.add(executor.submit(() -> securityUtil.runAs(userId, () -> approveChunk(userId, chunk, comment))));
+        }
+        for (Future<BatchApprovalResult> future : futures) {
+            try {
+                result.merge(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Batch approval interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Batch approval failed", e.getCause());
+            }
+        }
+        result.setElapsedMillis(System.currentTimeMillis() - start);
+        log.info("> Batch approval by {}: {} completed, {} failed in {}ms", userId,
+                result.getCompleted().size(), result.getFailures().size(), result.getElapsedMillis());
+        return result;
+    }
+
+    /**
+     * 审批用户待办中的任务，最多limit个
+     * @param processDefinitionKey 流程key，为空时不限流程
+     */
+    public BatchApprovalResult approveInbox(String userId, String processDefinitionKey, int limit, String comment) {
+        List<String> taskIds = new ArrayList<>();
+        InboxCursor cursor = null;
+        do {
+            InboxPage page = taskInboxService.findInbox(userId, processDefinitionKey, cursor,
+                    Math.min(INBOX_PAGE_SIZE, limit - taskIds.size()));
+            for (InboxTask task : page.getContent()) {
+                taskIds.add(task.getTaskId());
+            }
+            cursor = page.getNext();
+        } while (cursor != null && taskIds.size() < limit);
+        return approve(userId, taskIds, comment);
+    }
+
+    private BatchApprovalResult approveChunk(String userId, List<Task> chunk, String comment) {
+        BatchApprovalResult result = new BatchApprovalResult();
+        try {
+            transactionTemplate.execute(status -> {
+                for (Task task : chunk) {
+                    approveTask(userId, task, comment);
+                }
+                return null;
+            });
+            chunk.forEach(task -> result.getCompleted().add(task.getId()));
+        } catch (RuntimeException chunkFailure) {
+            log.debug("> Chunk of {} tasks rolled back, retrying one by one", chunk.size(), chunkFailure);
+            for (Task task : chunk) {
+                try {
+                    transactionTemplate.execute(status -> {
+                        approveTask(userId, task, comment);
+                        return null;
+                    });
+                    result.getCompleted().add(task.getId());
+                } catch (RuntimeException e) {
+                    result.getFailures().put(task.getId(), e.getMessage());
+                }
+            }
+        }
+        return result;
+    }
+
+    private void approveTask(String userId, Task task, String comment) {
+        // 当任务的待办人是候选组或者候选人形式，需要先拾取任务再完成
+        if (task.getAssignee() == null) {
+            taskService.claim(task.getId(), userId);
+        } else if (!task.getAssignee().equals(userId)) {
+            throw new IllegalStateException("任务已由" + task.getAssignee() + "办理");
+        }
+        if (comment != null && !comment.isEmpty()) {
+            taskService.addComment(task.getId(), task.getProcessInstanceId(), comment);
+        }
+        taskService.complete(task.getId());
+    }
+
+    /**
+     * 同一流程实例的任务放在同一批，每批约chunkSize个任务
+     */
+    private List<List<Task>> chunkByProcessInstance(Collection<Task> tasks) {
+        Map<String, List<Task>> byInstance = new LinkedHashMap<>();
+        for (Task task : tasks) {
+            byInstance.computeIfAbsent(task.getProcessInstanceId(), key -> new ArrayList<>()).add(task);
+        }
+        List<List<Task>> chunks = new ArrayList<>();
+        List<Task> current = new ArrayList<>();
+        for (List<Task> instanceTasks : byInstance.values()) {
+            if (!current.isEmpty() && current.size() + instanceTasks.size() > properties.getChunkSize()) {
+                chunks.add(current);
+                current = new ArrayList<>();
+            }
+            current.addAll(instanceTasks);
+        }
+        if (!current.isEmpty()) {
+            chunks.add(current);
+        }
+        return chunks;
+    }
+}
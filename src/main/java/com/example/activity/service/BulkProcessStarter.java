@@ -0,0 +1,164 @@
+package com.example.activity.service;
+
+import com.example.activity.config.BulkStartProperties;
+import com.example.activity.dto.BulkStartReport;
+import com.example.activity.dto.StartRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.activiti.engine.ActivitiObjectNotFoundException;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.repository.ProcessDefinition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * 批量启动流程实例
+ * 记录按batchSize分批，每批一个事务，在有界线程池中并发执行；
+ * 未完成的批次达到maxPendingBatches时暂停读取记录(背压)，内存中最多保留这些批次。
+ * 某一批失败时整批回滚，再逐条重试以得到每条记录的失败原因
+ */
+@Slf4j
+@Service
+public class BulkProcessStarter {
+
+    @Autowired
+    private RuntimeService runtimeService;
+
+    @Autowired
+    private ProcessDefinitionCatalog processDefinitionCatalog;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private BulkStartProperties properties;
+
+    private TransactionTemplate transactionTemplate;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(properties.getThreads(),
+                runnable -> new Thread(runnable, "bulk-start-" + threadNumber.incrementAndGet()));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    /**
+     * 按流程key的最新版本批量启动流程实例
+     * @param processDefinitionKey 流程key
+     * @param records 业务key和流程变量，按需读取，不会一次全部加载
+     * @return
+     */
+    public BulkStartReport start(String processDefinitionKey, Stream<StartRecord> records) {
+        long start = System.currentTimeMillis();
+        // 整个批量启动过程只解析一次流程定义
+        String processDefinitionId = resolveProcessDefinitionId(processDefinitionKey);
+        BulkStartReport report = new BulkStartReport();
+        report.setProcessDefinitionId(processDefinitionId);
+
+        Semaphore pendingBatches = new Semaphore(properties.getMaxPendingBatches());
+        List<Future<BulkStartReport>> futures = new ArrayList<>();
+        List<StartRecord> batch = new ArrayList<>(properties.getBatchSize());
+        Iterator<StartRecord> iterator = records.iterator();
+        try {
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() == properties.getBatchSize() || !iterator.hasNext()) {
+                    pendingBatches.acquire();
+                    List<StartRecord> submitted = batch;
+                    futures.add(executor.submit(() -> {
+                        try {
+                            return startBatch(processDefinitionId, submitted);
+                        } finally {
+                            pendingBatches.release();
+                        }
+                    }));
+                    batch = new ArrayList<>(properties.getBatchSize());
+                    collectDone(futures, report);
+                }
+            }
+            for (Future<BulkStartReport> future : futures) {
+                merge(report, future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Bulk start interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Bulk start failed", e.getCause());
+        }
+        report.setElapsedMillis(System.currentTimeMillis() - start);
+        log.info("> Bulk started {} instances of {} ({} failed) in {}ms, {} instances/s", report.getStarted(),
+                processDefinitionId, report.getFailures().size(), report.getElapsedMillis(),
+                String.format("%.1f", report.getInstancesPerSecond()));
+        return report;
+    }
+
+    protected String resolveProcessDefinitionId(String processDefinitionKey) {
+        ProcessDefinition processDefinition = processDefinitionCatalog.findLatest(processDefinitionKey);
+        if (processDefinition == null) {
+            throw new ActivitiObjectNotFoundException("no processes deployed with key '" + processDefinitionKey + "'",
+                    ProcessDefinition.class);
+        }
+        return processDefinition.getId();
+    }
+
+    private BulkStartReport startBatch(String processDefinitionId, List<StartRecord> batch) {
+        BulkStartReport report = new BulkStartReport();
+        try {
+            transactionTemplate.execute(status -> {
+                for (StartRecord record : batch) {
+                    runtimeService.startProcessInstanceById(processDefinitionId, record.getBusinessKey(), record.getVariables());
+                }
+                return null;
+            });
+            report.setStarted(batch.size());
+        } catch (RuntimeException batchFailure) {
+            log.debug("> Batch of {} records rolled back, retrying one by one", batch.size(), batchFailure);
+            for (StartRecord record : batch) {
+                try {
+                    transactionTemplate.execute(status ->
+                            runtimeService.startProcessInstanceById(processDefinitionId, record.getBusinessKey(), record.getVariables()));
+                    report.setStarted(report.getStarted() + 1);
+                } catch (RuntimeException e) {
+                    report.getFailures().put(record.getBusinessKey(), e.getMessage());
+                }
+            }
+        }
+        return report;
+    }
+
+    /**
+     * 合并已完成批次的结果，避免长时间运行时结果一直留在内存中
+     */
+    private static void collectDone(List<Future<BulkStartReport>> futures, BulkStartReport report)
+            throws InterruptedException, ExecutionException {
+        Iterator<Future<BulkStartReport>> iterator = futures.iterator();
+        while (iterator.hasNext()) {
+            Future<BulkStartReport> future = iterator.next();
+            if (future.isDone()) {
+                merge(report, future.get());
+                iterator.remove();
+            }
+        }
+    }
+
+    private static void merge(BulkStartReport report, BulkStartReport batchReport) {
+        report.setStarted(report.getStarted() + batchReport.getStarted());
+        report.getFailures().putAll(batchReport.getFailures());
+    }
+}
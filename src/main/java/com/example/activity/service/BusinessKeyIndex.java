@@ -0,0 +1,292 @@
+package com.example.activity.service;
+
+import com.example.activity.dto.ProcessPosition;
+import com.example.activity.util.ExpiringLruCache;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.TaskService;
+import org.activiti.engine.delegate.event.ActivitiCancelledEvent;
+import org.activiti.engine.delegate.event.ActivitiEntityEvent;
+import org.activiti.engine.delegate.event.ActivitiEvent;
+import org.activiti.engine.delegate.event.ActivitiEventListener;
+import org.activiti.engine.delegate.event.ActivitiEventType;
+import org.activiti.engine.impl.cfg.TransactionContext;
+import org.activiti.engine.impl.cfg.TransactionState;
+import org.activiti.engine.impl.context.Context;
+import org.activiti.engine.runtime.ProcessInstance;
+import org.activiti.engine.task.Task;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * 业务key到运行中流程实例和当前任务的索引
+ * 命中时查询"业务记录X当前在哪一步、谁在办理"只是一次内存查找；未命中时从数据库加载，批量查询时所有未命中的key共两次查询。
+ * 任务的创建、指派、完成在事务提交后增量更新到已缓存的条目，流程开始、结束时使条目失效。
+ * 业务key应在运行中的流程实例间唯一，有多个时取其中任意一个；返回的对象是共享的，调用方不要修改。
+ * 条目只随本节点引擎的事件更新，多节点共享数据库时其他节点上的办理、指派最长要等ttl-minutes过期后才能看到，
+ * 多节点部署应把ttl-minutes调小到可接受的延迟
+ */
+@Service
+public class BusinessKeyIndex implements ActivitiEventListener {
+
+    private static final int IN_CHUNK_SIZE = 500;
+
+    @Autowired
+    private RuntimeService runtimeService;
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${demo.business-key-index.max-size:100000}")
+    private int maxSize;
+
+    @Value("${demo.business-key-index.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    private final Object lock = new Object();
+
+    /**
+     * 每次变更加一
+     */
+    private long version;
+
+    /**
+     * 正在从数据库加载的调用数
+     */
+    private int loading;
+
+    /**
+     * 有加载进行时，流程实例id -> 最后一次变更的version；加载期间有变更的流程实例不缓存加载结果，避免覆盖更新的数据。
+     * 没有加载进行时清空
+     */
+    private final Map<String, Long> changedProcesses = new HashMap<>();
+
+    private ExpiringLruCache<String, ProcessPosition> positions;
+
+    private ExpiringLruCache<String, String> businessKeys;
+
+    @PostConstruct
+    public void init() {
+        positions = new ExpiringLruCache<>(maxSize, ttlMinutes, TimeUnit.MINUTES);
+        businessKeys = new ExpiringLruCache<>(maxSize, ttlMinutes, TimeUnit.MINUTES);
+        runtimeService.addEventListener(this,
+                ActivitiEventType.PROCESS_STARTED, ActivitiEventType.PROCESS_COMPLETED, ActivitiEventType.PROCESS_CANCELLED,
+                ActivitiEventType.TASK_CREATED, ActivitiEventType.TASK_ASSIGNED, ActivitiEventType.TASK_COMPLETED,
+                ActivitiEventType.ENTITY_DELETED);
+    }
+
+    /**
+     * 业务记录对应的运行中流程，没有运行中的流程时返回null
+     */
+    public ProcessPosition find(String businessKey) {
+        return findAll(Collections.singletonList(businessKey)).get(businessKey);
+    }
+
+    /**
+     * 批量查询，结果中只包含有运行中流程的业务key
+     */
+    public Map<String, ProcessPosition> findAll(Collection<String> businessKeys) {
+        Map<String, ProcessPosition> result = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String businessKey : new LinkedHashSet<>(businessKeys)) {
+            ProcessPosition position = positions.get(businessKey);
+            if (position != null) {
+                result.put(businessKey, position);
+            } else {
+                missing.add(businessKey);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        long loadVersion;
+        synchronized (lock) {
+            loadVersion = version;
+            loading++;
+        }
+        Map<String, ProcessPosition> loaded = Collections.emptyMap();
+        try {
+            loaded = load(missing);
+        } finally {
+            synchronized (lock) {
+                for (ProcessPosition position : loaded.values()) {
+                    Long changed = changedProcesses.get(position.getProcessInstanceId());
+                    if (changed == null || changed <= loadVersion) {
+                        positions.put(position.getBusinessKey(), position);
+                        this.businessKeys.put(position.getProcessInstanceId(), position.getBusinessKey());
+                    }
+                }
+                if (--loading == 0) {
+                    changedProcesses.clear();
+                }
+            }
+        }
+        result.putAll(loaded);
+        return result;
+    }
+
+    /**
+     * 当前的任务，没有运行中的流程时返回空列表
+     */
+    public List<ProcessPosition.CurrentTask> findCurrentTasks(String businessKey) {
+        ProcessPosition position = find(businessKey);
+        return position == null ? Collections.emptyList() : position.getTasks();
+    }
+
+    @Override
+    public void onEvent(ActivitiEvent event) {
+        Runnable change = toChange(event);
+        if (change == null) {
+            return;
+        }
+        String processInstanceId = processInstanceId(event);
+        TransactionContext transactionContext = Context.getTransactionContext();
+        if (transactionContext == null) {
+            apply(processInstanceId, change);
+        } else {
+            transactionContext.addTransactionListener(TransactionState.COMMITTED,
+                    commandContext -> apply(processInstanceId, change));
+        }
+    }
+
+    @Override
+    public boolean isFailOnException() {
+        return false;
+    }
+
+    private void apply(String processInstanceId, Runnable change) {
+        synchronized (lock) {
+            version++;
+            if (loading > 0) {
+                changedProcesses.put(processInstanceId, version);
+            }
+            change.run();
+        }
+    }
+
+    private static String processInstanceId(ActivitiEvent event) {
+        if (event.getType() == ActivitiEventType.PROCESS_CANCELLED) {
+            return ((ActivitiCancelledEvent) event).getProcessInstanceId();
+        }
+        Object entity = ((ActivitiEntityEvent) event).getEntity();
+        return entity instanceof Task ? ((Task) entity).getProcessInstanceId()
+                : ((ProcessInstance) entity).getProcessInstanceId();
+    }
+
+    private Runnable toChange(ActivitiEvent event) {
+        if (event.getType() == ActivitiEventType.PROCESS_CANCELLED) {
+            String processInstanceId = ((ActivitiCancelledEvent) event).getProcessInstanceId();
+            return () -> invalidateProcess(processInstanceId);
+        }
+        Object entity = ((ActivitiEntityEvent) event).getEntity();
+        if (entity instanceof Task) {
+            Task task = (Task) entity;
+            ProcessPosition.CurrentTask currentTask = toCurrentTask(task);
+            String processInstanceId = task.getProcessInstanceId();
+            switch (event.getType()) {
+                case TASK_CREATED:
+                case TASK_ASSIGNED:
+                    return () -> updateTasks(processInstanceId, tasks -> {
+                        tasks.removeIf(existing -> existing.getTaskId().equals(currentTask.getTaskId()));
+                        tasks.add(currentTask);
+                        return tasks;
+                    });
+                case TASK_COMPLETED:
+                case ENTITY_DELETED:
+                    return () -> updateTasks(processInstanceId, tasks -> {
+                        tasks.removeIf(existing -> existing.getTaskId().equals(currentTask.getTaskId()));
+                        return tasks;
+                    });
+                default:
+                    return null;
+            }
+        }
+        if (entity instanceof ProcessInstance && event.getType() != ActivitiEventType.ENTITY_DELETED) {
+            ProcessInstance processInstance = (ProcessInstance) entity;
+            String processInstanceId = processInstance.getProcessInstanceId();
+            String businessKey = processInstance.getBusinessKey();
+            return () -> {
+                invalidateProcess(processInstanceId);
+                if (businessKey != null) {
+                    positions.invalidate(businessKey);
+                }
+            };
+        }
+        return null;
+    }
+
+    /**
+     * 在已缓存条目的副本上修改任务列表后替换，读取方不会看到修改到一半的列表
+     */
+    private void updateTasks(String processInstanceId, UnaryOperator<List<ProcessPosition.CurrentTask>> update) {
+        String businessKey = businessKeys.get(processInstanceId);
+        ProcessPosition current = businessKey == null ? null : positions.get(businessKey);
+        if (current == null || !current.getProcessInstanceId().equals(processInstanceId)) {
+            return;
+        }
+        ProcessPosition updated = new ProcessPosition();
+        updated.setBusinessKey(current.getBusinessKey());
+        updated.setProcessInstanceId(current.getProcessInstanceId());
+        updated.setProcessDefinitionId(current.getProcessDefinitionId());
+        updated.setTasks(update.apply(new ArrayList<>(current.getTasks())));
+        positions.put(businessKey, updated);
+    }
+
+    private void invalidateProcess(String processInstanceId) {
+        String businessKey = businessKeys.get(processInstanceId);
+        if (businessKey != null) {
+            positions.invalidate(businessKey);
+            businessKeys.invalidate(processInstanceId);
+        }
+    }
+
+    private Map<String, ProcessPosition> load(List<String> businessKeys) {
+        Map<String, ProcessPosition> byProcessInstance = new HashMap<>();
+        for (int from = 0; from < businessKeys.size(); from += IN_CHUNK_SIZE) {
+            List<String> chunk = businessKeys.subList(from, Math.min(from + IN_CHUNK_SIZE, businessKeys.size()));
+            String placeholders = chunk.stream().map(key -> "?").collect(Collectors.joining(", "));
+            jdbcTemplate.query("select ID_, BUSINESS_KEY_, PROC_DEF_ID_ from ACT_RU_EXECUTION"
+                    + " where ID_ = PROC_INST_ID_ and BUSINESS_KEY_ in (" + placeholders + ")", rs -> {
+                ProcessPosition position = new ProcessPosition();
+                position.setProcessInstanceId(rs.getString(1));
+                position.setBusinessKey(rs.getString(2));
+                position.setProcessDefinitionId(rs.getString(3));
+                byProcessInstance.put(position.getProcessInstanceId(), position);
+            }, chunk.toArray());
+        }
+
+        List<String> processInstanceIds = new ArrayList<>(byProcessInstance.keySet());
+        for (int from = 0; from < processInstanceIds.size(); from += IN_CHUNK_SIZE) {
+            List<String> chunk = processInstanceIds.subList(from, Math.min(from + IN_CHUNK_SIZE, processInstanceIds.size()));
+            for (Task task : taskService.createTaskQuery().processInstanceIdIn(chunk).list()) {
+                byProcessInstance.get(task.getProcessInstanceId()).getTasks().add(toCurrentTask(task));
+            }
+        }
+
+        Map<String, ProcessPosition> result = new HashMap<>();
+        for (ProcessPosition position : byProcessInstance.values()) {
+            result.put(position.getBusinessKey(), position);
+        }
+        return result;
+    }
+
+    private static ProcessPosition.CurrentTask toCurrentTask(Task task) {
+        ProcessPosition.CurrentTask currentTask = new ProcessPosition.CurrentTask();
+        currentTask.setTaskId(task.getId());
+        currentTask.setTaskName(task.getName());
+        currentTask.setTaskDefinitionKey(task.getTaskDefinitionKey());
+        currentTask.setAssignee(task.getAssignee());
+        return currentTask;
+    }
+}
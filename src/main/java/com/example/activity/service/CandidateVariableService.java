@@ -0,0 +1,50 @@
+package com.example.activity.service;
+
+import com.example.activity.variable.CandidateList;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.TaskService;
+import org.activiti.engine.task.Task;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 候选人集合变量
+ * 任务创建时引擎把候选人写入ACT_RU_IDENTITYLINK(按用户建有索引)，
+ * "哪些待办任务的候选人包含某用户"直接查identity link，不需要解析变量值
+ */
+@Service
+public class CandidateVariableService {
+
+    @Autowired
+    private RuntimeService runtimeService;
+
+    @Autowired
+    private TaskService taskService;
+
+    /**
+     * 设置流程实例(执行)上的候选人变量，供后续任务的 ${变量名} 表达式使用
+     */
+    public void setExecutionCandidates(String executionId, String variableName, Collection<String> candidates) {
+        runtimeService.setVariable(executionId, variableName, CandidateList.of(candidates));
+    }
+
+    /**
+     * 通过任务设置候选人变量，变量保存在任务所属的执行上
+     */
+    public void setTaskCandidates(String taskId, String variableName, Collection<String> candidates) {
+        taskService.setVariable(taskId, variableName, CandidateList.of(candidates));
+    }
+
+    /**
+     * 候选人包含该用户且未被拾取的任务
+     */
+    public List<Task> findOpenTasksListing(String userId, int firstResult, int maxResults) {
+        return taskService.createTaskQuery()
+                .taskCandidateUser(userId)
+                .orderByTaskCreateTime().asc()
+                .listPage(firstResult, maxResults);
+    }
+}
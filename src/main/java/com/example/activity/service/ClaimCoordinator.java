@@ -0,0 +1,188 @@
+package com.example.activity.service;
+
+import com.example.activity.config.ClaimProperties;
+import com.example.activity.dto.ClaimResult;
+import com.example.activity.dto.InboxCursor;
+import com.example.activity.dto.InboxPage;
+import com.example.activity.dto.InboxTask;
+import com.example.activity.metrics.EngineMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.activiti.engine.ActivitiObjectNotFoundException;
+import org.activiti.engine.ActivitiOptimisticLockingException;
+import org.activiti.engine.ActivitiTaskAlreadyClaimedException;
+import org.activiti.engine.TaskService;
+import org.activiti.engine.task.Task;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 多节点共享同一数据库时的任务拾取
+ * 候选组的待办按任务id的哈希分片，每个拾取方只拿到自己分片中的任务，并发拾取方之间不会争抢同一个任务；
+ * 本分片的任务都没有拾取成功时可从其他分片拾取。拾取下一个任务时遇到乐观锁冲突或任务已被拾取，说明有其他拾取方在处理该任务，
+ * 直接尝试下一个候选任务，不重新查询整个待办；拾取指定任务时乐观锁冲突按随机退避重试。
+ * 分片是静态配置的：同一节点上的多个工作线程使用相同的shard-index，彼此之间仍会争抢；
+ * 增减节点时需要同时修改所有节点的shard-count和各自的shard-index，配置不一致时分片会重叠或遗漏(遗漏的任务由空闲拾取方从其他分片拾取)。
+ * 需要工作线程各自独占分片时，调用claimNext(userId, key, shardIndex, shardCount)自行分配
+ */
+@Slf4j
+@Service
+public class ClaimCoordinator {
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private TaskInboxService taskInboxService;
+
+    @Autowired
+    private EngineMetrics engineMetrics;
+
+    @Autowired
+    private ClaimProperties properties;
+
+    /**
+     * 按本节点配置的分片拾取一个任务
+     */
+    public ClaimResult claimNext(String userId, String processDefinitionKey) {
+        return claimNext(userId, processDefinitionKey, properties.getShardIndex(), properties.getShardCount());
+    }
+
+    /**
+     * 从指定分片拾取一个任务，已被其他用户拾取或拾取冲突的任务跳过并尝试下一个；本分片都未拾取成功时从其他分片拾取
+     * @param shardIndex 拾取方的分片，从0开始
+     * @param shardCount 拾取方总数
+     */
+    public ClaimResult claimNext(String userId, String processDefinitionKey, int shardIndex, int shardCount) {
+        int attempts = 0;
+        List<InboxTask> own = new ArrayList<>();
+        List<InboxTask> others = new ArrayList<>();
+        findClaimable(userId, processDefinitionKey, shardIndex, shardCount, own, others);
+        for (InboxTask task : own) {
+            ClaimResult result = claimOnce(userId, task.getTaskId());
+            attempts += result.getAttempts();
+            if (result.getStatus() == ClaimResult.Status.CLAIMED) {
+                return new ClaimResult(ClaimResult.Status.CLAIMED, task.getTaskId(), attempts);
+            }
+        }
+        if (properties.isStealWhenIdle()) {
+            // 从随机位置开始，避免空闲的拾取方都去抢同一个任务
+            Collections.shuffle(others, ThreadLocalRandom.current());
+            for (InboxTask task : others) {
+                ClaimResult result = claimOnce(userId, task.getTaskId());
+                attempts += result.getAttempts();
+                if (result.getStatus() == ClaimResult.Status.CLAIMED) {
+                    engineMetrics.countClaimContention("stolen");
+                    return new ClaimResult(ClaimResult.Status.CLAIMED, task.getTaskId(), attempts);
+                }
+            }
+        }
+        return new ClaimResult(ClaimResult.Status.NONE_AVAILABLE, null, attempts);
+    }
+
+    /**
+     * 拾取指定任务，用户必须是任务的候选人(或所在组是候选组)；乐观锁冲突时退避重试
+     */
+    public ClaimResult claim(String userId, String taskId) {
+        long start = System.nanoTime();
+        if (taskInboxService.findAccessibleTasks(userId, Collections.singleton(taskId)).isEmpty()) {
+            Task task = taskService.createTaskQuery().taskId(taskId).singleResult();
+            ClaimResult.Status status = task == null ? ClaimResult.Status.NOT_FOUND
+                    : task.getAssignee() != null ? ClaimResult.Status.ALREADY_CLAIMED : ClaimResult.Status.NOT_CANDIDATE;
+            engineMetrics.recordClaim(status.name().toLowerCase(), System.nanoTime() - start);
+            return new ClaimResult(status, taskId, 0);
+        }
+        return claim(userId, taskId, properties.getMaxAttempts());
+    }
+
+    /**
+     * 拾取待办中的候选任务，只尝试一次：乐观锁冲突说明其他拾取方正在拾取该任务，由调用方换下一个任务
+     */
+    private ClaimResult claimOnce(String userId, String taskId) {
+        ClaimResult result = claim(userId, taskId, 1);
+        if (result.getStatus() == ClaimResult.Status.CONFLICT) {
+            engineMetrics.countClaimContention("skipped");
+        }
+        return result;
+    }
+
+    private ClaimResult claim(String userId, String taskId, int maxAttempts) {
+        long start = System.nanoTime();
+        ClaimResult.Status status = ClaimResult.Status.CONFLICT;
+        int attempt = 0;
+        while (attempt < maxAttempts) {
+            attempt++;
+            try {
+                taskService.claim(taskId, userId);
+                status = ClaimResult.Status.CLAIMED;
+                break;
+            } catch (ActivitiTaskAlreadyClaimedException e) {
+                status = ClaimResult.Status.ALREADY_CLAIMED;
+                break;
+            } catch (ActivitiObjectNotFoundException e) {
+                status = ClaimResult.Status.NOT_FOUND;
+                break;
+            } catch (ActivitiOptimisticLockingException e) {
+                if (attempt < maxAttempts) {
+                    engineMetrics.countClaimContention("retry");
+                    if (!backoff(attempt)) {
+                        break;
+                    }
+                }
+            }
+        }
+        engineMetrics.recordClaim(status.name().toLowerCase(), System.nanoTime() - start);
+        if (status == ClaimResult.Status.CONFLICT) {
+            log.debug("> Claim of task {} by {} still conflicting after {} attempts", taskId, userId, attempt);
+        }
+        return new ClaimResult(status, taskId, attempt);
+    }
+
+    /**
+     * 可拾取(未指派办理人)的候选任务，按分片分到own和others中
+     */
+    private void findClaimable(String userId, String processDefinitionKey, int shardIndex, int shardCount,
+                               List<InboxTask> own, List<InboxTask> others) {
+        InboxCursor cursor = null;
+        for (int page = 0; page < properties.getScanPages(); page++) {
+            InboxPage inbox = taskInboxService.findInbox(userId, processDefinitionKey, cursor, properties.getPageSize());
+            for (InboxTask task : inbox.getContent()) {
+                if (task.getAssignee() != null) {
+                    continue;
+                }
+                if (shard(task.getTaskId(), shardCount) == shardIndex) {
+                    own.add(task);
+                } else {
+                    others.add(task);
+                }
+            }
+            cursor = inbox.getNext();
+            if (cursor == null || !own.isEmpty()) {
+                break;
+            }
+        }
+    }
+
+    static int shard(String taskId, int shardCount) {
+        return shardCount <= 1 ? 0 : Math.floorMod(taskId.hashCode(), shardCount);
+    }
+
+    /**
+     * 退避上限随重试次数加倍，实际等待0到上限之间的随机时间
+     * @return 等待期间被中断时返回false
+     */
+    private boolean backoff(int attempt) {
+        long ceiling = Math.min(properties.getMaxBackoffMillis(), properties.getBackoffMillis() << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
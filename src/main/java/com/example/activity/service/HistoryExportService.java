@@ -0,0 +1,266 @@
+package com.example.activity.service;
+
+import com.example.activity.dto.HistoryExportResult;
+import com.example.activity.job.LaneAsyncJobExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.activiti.engine.HistoryService;
+import org.activiti.engine.history.HistoricActivityInstance;
+import org.activiti.engine.history.NativeHistoricActivityInstanceQuery;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 历史节点数据导出(gzip压缩的csv)
+ * 只导出已结束的节点，按(结束时间+id)游标逐页读取ACT_HI_ACTINST，内存中只保留一页；每页写成一个独立的gzip段并刷盘后再写断点，
+ * 中断后再次导出时把文件截断到断点位置继续；多个流程并行导出。
+ * 导出开始时确定截止时间(当前时间减去commit-lag-seconds)，只导出结束时间不晚于截止时间的节点，
+ * 截止时间之前结束、但提交较晚的事务也已提交，游标之前不会再出现新行；截止时间保存在断点中，继续导出时不变。
+ * 导出完成后断点标记为完成，下次调用重新完整导出
+ */
+@Slf4j
+@Service
+public class HistoryExportService {
+
+    private static final String HEADER = "id,processDefinitionId,processInstanceId,activityId,activityName,activityType,"
+            + "taskId,assignee,startTime,endTime,durationInMillis\n";
+
+    @Autowired
+    private HistoryService historyService;
+
+    @Value("${demo.history-export.page-size:1000}")
+    private int pageSize;
+
+    @Value("${demo.history-export.threads:2}")
+    private int threads;
+
+    @Value("${demo.history-export.commit-lag-seconds:60}")
+    private long commitLagSeconds;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads,
+                runnable -> new Thread(runnable, "history-export-" + threadNumber.incrementAndGet()));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 并行导出多个流程的历史节点，每个流程一个文件：{key}-activities.csv.gz
+     */
+    public List<HistoryExportResult> export(Collection<String> processDefinitionKeys, Path outputDir) {
+        List<Future<HistoryExportResult>> futures = new ArrayList<>();
+        for (String key : processDefinitionKeys) {
+            futures.add(executor.submit(() -> export(key, outputDir)));
+        }
+        List<HistoryExportResult> results = new ArrayList<>(futures.size());
+        for (Future<HistoryExportResult> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("History export interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("History export failed", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    public HistoryExportResult export(String processDefinitionKey, Path outputDir) throws IOException {
+        long start = System.currentTimeMillis();
+        Files.createDirectories(outputDir);
+        Path file = outputDir.resolve(processDefinitionKey + "-activities.csv.gz");
+        Path checkpointFile = outputDir.resolve(processDefinitionKey + "-activities.checkpoint");
+        Checkpoint checkpoint = Checkpoint.read(checkpointFile);
+        if (checkpoint != null && checkpoint.completed) {
+            // 上次导出已完成，重新导出
+            checkpoint = null;
+        }
+
+        HistoryExportResult result = new HistoryExportResult();
+        result.setProcessDefinitionKey(processDefinitionKey);
+        result.setFile(file.toString());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (checkpoint == null) {
+                channel.truncate(0);
+                writeSegment(channel, HEADER);
+                Date cutoff = new Date(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(commitLagSeconds));
+                checkpoint = new Checkpoint(cutoff, null, null, 0, channel.size(), false);
+                checkpoint.write(checkpointFile);
+            } else {
+                // 丢弃断点之后未完成的数据
+                channel.truncate(checkpoint.fileSize);
+            }
+            channel.position(checkpoint.fileSize);
+
+            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+            long exported = 0;
+            while (true) {
+                List<HistoricActivityInstance> page = createPageQuery(processDefinitionKey, checkpoint).listPage(0, pageSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+                StringBuilder csv = new StringBuilder(page.size() * 160);
+                for (HistoricActivityInstance activity : page) {
+                    appendRow(csv, activity, dateFormat);
+                }
+                writeSegment(channel, csv);
+                exported += page.size();
+
+                HistoricActivityInstance last = page.get(page.size() - 1);
+                checkpoint = new Checkpoint(checkpoint.cutoff, last.getEndTime(), last.getId(), checkpoint.rows + page.size(),
+                        channel.position(), false);
+                checkpoint.write(checkpointFile);
+                if (page.size() < pageSize) {
+                    break;
+                }
+            }
+            checkpoint = new Checkpoint(checkpoint.cutoff, checkpoint.lastEndTime, checkpoint.lastId, checkpoint.rows,
+                    checkpoint.fileSize, true);
+            checkpoint.write(checkpointFile);
+            result.setExportedRows(exported);
+            result.setTotalRows(checkpoint.rows);
+        } catch (RuntimeException | IOException e) {
+            log.error("> Export of {} stopped, can be resumed from checkpoint", processDefinitionKey, e);
+            result.setError(e.getMessage());
+        }
+        result.setElapsedMillis(System.currentTimeMillis() - start);
+        log.info("> Exported {} activities of {} to {} in {}ms", result.getExportedRows(), processDefinitionKey, file,
+                result.getElapsedMillis());
+        return result;
+    }
+
+    private NativeHistoricActivityInstanceQuery createPageQuery(String processDefinitionKey, Checkpoint after) {
+        NativeHistoricActivityInstanceQuery query = historyService.createNativeHistoricActivityInstanceQuery();
+        StringBuilder sql = new StringBuilder("select RES.* from ACT_HI_ACTINST RES")
+                .append(" where RES.PROC_DEF_ID_ like #{processDefinitionIdLike} escape '!'")
+                .append(" and RES.END_TIME_ is not null and RES.END_TIME_ <= #{cutoff}");
+        // 流程定义id的格式为 key:version:id，key中的_和%按字面匹配
+        query.parameter("processDefinitionIdLike", LaneAsyncJobExecutor.processDefinitionIdPattern(processDefinitionKey));
+        query.parameter("cutoff", after.cutoff);
+        if (after.lastId != null) {
+            sql.append(" and (RES.END_TIME_ > #{afterTime} or (RES.END_TIME_ = #{afterTime} and RES.ID_ > #{afterId}))");
+            query.parameter("afterTime", after.lastEndTime);
+            query.parameter("afterId", after.lastId);
+        }
+        sql.append(" order by RES.END_TIME_ asc, RES.ID_ asc");
+        return query.sql(sql.toString());
+    }
+
+    /**
+     * 写入一个完整的gzip段并刷盘，多个gzip段连在一起仍是合法的gzip文件
+     */
+    private static void writeSegment(FileChannel channel, CharSequence content) throws IOException {
+        OutputStream out = Channels.newOutputStream(channel);
+        GZIPOutputStream gzip = new GZIPOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        Writer writer = new OutputStreamWriter(gzip, StandardCharsets.UTF_8);
+        writer.append(content);
+        writer.flush();
+        gzip.finish();
+        gzip.flush();
+        channel.force(false);
+    }
+
+    private static void appendRow(StringBuilder csv, HistoricActivityInstance activity, SimpleDateFormat dateFormat) {
+        appendField(csv, activity.getId()).append(',');
+        appendField(csv, activity.getProcessDefinitionId()).append(',');
+        appendField(csv, activity.getProcessInstanceId()).append(',');
+        appendField(csv, activity.getActivityId()).append(',');
+        appendField(csv, activity.getActivityName()).append(',');
+        appendField(csv, activity.getActivityType()).append(',');
+        appendField(csv, activity.getTaskId()).append(',');
+        appendField(csv, activity.getAssignee()).append(',');
+        appendField(csv, activity.getStartTime() == null ? null : dateFormat.format(activity.getStartTime())).append(',');
+        appendField(csv, activity.getEndTime() == null ? null : dateFormat.format(activity.getEndTime())).append(',');
+        appendField(csv, activity.getDurationInMillis() == null ? null : activity.getDurationInMillis().toString()).append('\n');
+    }
+
+    private static StringBuilder appendField(StringBuilder csv, String value) {
+        if (value == null) {
+            return csv;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return csv.append(value);
+        }
+        return csv.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    /**
+     * 导出断点：截止时间、最后一行的结束时间和id、已导出行数、对应的文件长度、是否已完成
+     */
+    private static final class Checkpoint {
+
+        private final Date cutoff;
+
+        private final Date lastEndTime;
+
+        private final String lastId;
+
+        private final long rows;
+
+        private final long fileSize;
+
+        private final boolean completed;
+
+        private Checkpoint(Date cutoff, Date lastEndTime, String lastId, long rows, long fileSize, boolean completed) {
+            this.cutoff = cutoff;
+            this.lastEndTime = lastEndTime;
+            this.lastId = lastId;
+            this.rows = rows;
+            this.fileSize = fileSize;
+            this.completed = completed;
+        }
+
+        /**
+         * 读取断点，不存在或是旧格式时返回null(重新导出)
+         */
+        static Checkpoint read(Path path) throws IOException {
+            if (!Files.exists(path)) {
+                return null;
+            }
+            String[] fields = new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim().split("\t", -1);
+            if (fields.length != 6) {
+                return null;
+            }
+            return new Checkpoint(new Date(Long.parseLong(fields[0])),
+                    fields[1].isEmpty() ? null : new Date(Long.parseLong(fields[1])),
+                    fields[2].isEmpty() ? null : fields[2], Long.parseLong(fields[3]), Long.parseLong(fields[4]),
+                    Boolean.parseBoolean(fields[5]));
+        }
+
+        /**
+         * 先写临时文件再改名，断点文件不会只写一半
+         */
+        void write(Path path) throws IOException {
+            String content = cutoff.getTime() + "\t"
+                    + (lastEndTime == null ? "" : String.valueOf(lastEndTime.getTime())) + "\t"
+                    + (lastId == null ? "" : lastId) + "\t" + rows + "\t" + fileSize + "\t" + completed;
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(temp, content.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
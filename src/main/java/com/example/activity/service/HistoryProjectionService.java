@@ -0,0 +1,134 @@
+package com.example.activity.service;
+
+import com.example.activity.dto.DoneTask;
+import lombok.extern.slf4j.Slf4j;
+import org.activiti.engine.HistoryService;
+import org.activiti.engine.history.HistoricProcessInstance;
+import org.activiti.engine.history.HistoricTaskInstance;
+import org.activiti.engine.history.NativeHistoricTaskInstanceQuery;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * 已办任务查询
+ * 按(结束时间+任务id)游标逐页读取历史任务，每页的流程实例按IN列表分批查询，
+ * 内存中只保留当前页和少量最近用到的流程实例
+ */
+@Slf4j
+@Service
+public class HistoryProjectionService {
+
+    /**
+     * IN列表单批的最大id数，避免SQL过长
+     */
+    static final int IN_CHUNK_SIZE = 500;
+
+    /**
+     * 跨页缓存的流程实例数
+     */
+    private static final int INSTANCE_CACHE_SIZE = 1000;
+
+    @Autowired
+    private HistoryService historyService;
+
+    /**
+     * 逐页处理用户的已办任务
+     * @param assignee 办理人
+     * @param pageSize 每页条数
+     * @param pageConsumer 每页回调一次
+     * @return 处理的任务总数
+     */
+    public long streamDoneTasks(String assignee, int pageSize, Consumer<List<DoneTask>> pageConsumer) {
+        Map<String, HistoricProcessInstance> recentInstances = new LinkedHashMap<String, HistoricProcessInstance>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, HistoricProcessInstance> eldest) {
+                return size() > INSTANCE_CACHE_SIZE;
+            }
+        };
+
+        long total = 0;
+        HistoricTaskInstance last = null;
+        while (true) {
+            List<HistoricTaskInstance> tasks = createDoneTaskQuery(assignee, last).listPage(0, pageSize);
+            if (tasks.isEmpty()) {
+                break;
+            }
+            loadProcessInstances(tasks, recentInstances);
+
+            List<DoneTask> page = new ArrayList<>(tasks.size());
+            for (HistoricTaskInstance task : tasks) {
+                page.add(toDoneTask(task, recentInstances.get(task.getProcessInstanceId())));
+            }
+            pageConsumer.accept(page);
+            total += tasks.size();
+
+            if (tasks.size() < pageSize) {
+                break;
+            }
+            last = tasks.get(tasks.size() - 1);
+        }
+        return total;
+    }
+
+    /**
+     * 批量查询历史流程实例，id按IN_CHUNK_SIZE分批
+     */
+    public List<HistoricProcessInstance> findProcessInstances(Collection<String> processInstanceIds) {
+        List<HistoricProcessInstance> result = new ArrayList<>(processInstanceIds.size());
+        List<String> ids = new ArrayList<>(processInstanceIds);
+        for (int from = 0; from < ids.size(); from += IN_CHUNK_SIZE) {
+            Set<String> chunk = new HashSet<>(ids.subList(from, Math.min(from + IN_CHUNK_SIZE, ids.size())));
+            result.addAll(historyService.createHistoricProcessInstanceQuery()
+                    .processInstanceIds(chunk)
+                    .list());
+        }
+        return result;
+    }
+
+    private void loadProcessInstances(List<HistoricTaskInstance> tasks, Map<String, HistoricProcessInstance> recentInstances) {
+        Set<String> missing = new HashSet<>();
+        for (HistoricTaskInstance task : tasks) {
+            if (task.getProcessInstanceId() != null && !recentInstances.containsKey(task.getProcessInstanceId())) {
+                missing.add(task.getProcessInstanceId());
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (HistoricProcessInstance instance : findProcessInstances(missing)) {
+                recentInstances.put(instance.getId(), instance);
+            }
+        }
+    }
+
+    private NativeHistoricTaskInstanceQuery createDoneTaskQuery(String assignee, HistoricTaskInstance after) {
+        NativeHistoricTaskInstanceQuery query = historyService.createNativeHistoricTaskInstanceQuery();
+        StringBuilder sql = new StringBuilder("select RES.* from ACT_HI_TASKINST RES")
+                .append(" where RES.ASSIGNEE_ = #{assignee} and RES.END_TIME_ is not null");
+        query.parameter("assignee", assignee);
+        if (after != null) {
+            sql.append(" and (RES.END_TIME_ > #{afterTime} or (RES.END_TIME_ = #{afterTime} and RES.ID_ > #{afterId}))");
+            query.parameter("afterTime", after.getEndTime());
+            query.parameter("afterId", after.getId());
+        }
+        sql.append(" order by RES.END_TIME_ asc, RES.ID_ asc");
+        return query.sql(sql.toString());
+    }
+
+    private DoneTask toDoneTask(HistoricTaskInstance task, HistoricProcessInstance processInstance) {
+        DoneTask doneTask = new DoneTask();
+        doneTask.setTaskId(task.getId());
+        doneTask.setTaskName(task.getName());
+        doneTask.setAssignee(task.getAssignee());
+        doneTask.setTaskEndTime(task.getEndTime());
+        doneTask.setProcessInstanceId(task.getProcessInstanceId());
+        doneTask.setProcessDefinitionId(task.getProcessDefinitionId());
+        if (processInstance != null) {
+            doneTask.setBusinessKey(processInstance.getBusinessKey());
+            doneTask.setProcessStartTime(processInstance.getStartTime());
+            doneTask.setProcessEndTime(processInstance.getEndTime());
+        }
+        return doneTask;
+    }
+}
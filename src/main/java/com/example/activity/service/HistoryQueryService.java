@@ -0,0 +1,60 @@
+package com.example.activity.service;
+
+import com.example.activity.dto.ArchivedProcessInstance;
+import com.example.activity.history.HistoryArchiver;
+import org.activiti.engine.HistoryService;
+import org.activiti.engine.history.HistoricProcessInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * 历史流程的统一查询：先查ACT_HI_*表中的热数据，查不到再查归档文件
+ */
+@Service
+public class HistoryQueryService {
+
+    @Autowired
+    private HistoryService historyService;
+
+    @Autowired
+    private HistoryArchiver historyArchiver;
+
+    /**
+     * 按流程实例id查询完整历史
+     */
+    public Optional<ArchivedProcessInstance> findProcessInstance(String processInstanceId) {
+        HistoricProcessInstance instance = historyService.createHistoricProcessInstanceQuery()
+                .processInstanceId(processInstanceId)
+                .singleResult();
+        if (instance != null) {
+            return Optional.of(historyArchiver.snapshot(instance));
+        }
+        return historyArchiver.find(processInstanceId);
+    }
+
+    /**
+     * 按业务key查询所有流程实例的完整历史，按开始时间排序
+     */
+    public List<ArchivedProcessInstance> findByBusinessKey(String businessKey) {
+        List<ArchivedProcessInstance> result = new ArrayList<>();
+        Set<String> hotIds = new HashSet<>();
+        List<HistoricProcessInstance> instances = historyService.createHistoricProcessInstanceQuery()
+                .processInstanceBusinessKey(businessKey)
+                .list();
+        for (HistoricProcessInstance instance : instances) {
+            hotIds.add(instance.getId());
+            result.add(historyArchiver.snapshot(instance));
+        }
+        // 归档后删除失败的实例同时存在于两边，以热数据为准
+        for (ArchivedProcessInstance archived : historyArchiver.findByBusinessKey(businessKey)) {
+            if (!hotIds.contains(archived.getProcessInstanceId())) {
+                result.add(archived);
+            }
+        }
+        result.sort(Comparator.comparing(ArchivedProcessInstance::getStartTime,
+                Comparator.nullsLast(Comparator.naturalOrder())));
+        return result;
+    }
+}
@@ -0,0 +1,301 @@
+package com.example.activity.service;
+
+import com.example.activity.identity.GroupMembershipIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.delegate.event.ActivitiEntityEvent;
+import org.activiti.engine.delegate.event.ActivitiEvent;
+import org.activiti.engine.delegate.event.ActivitiEventListener;
+import org.activiti.engine.delegate.event.ActivitiEventType;
+import org.activiti.engine.impl.cfg.TransactionContext;
+import org.activiti.engine.impl.cfg.TransactionState;
+import org.activiti.engine.impl.context.Context;
+import org.activiti.engine.task.IdentityLink;
+import org.activiti.engine.task.IdentityLinkType;
+import org.activiti.engine.task.Task;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 待办数量计数
+ * 启动时从数据库加载，之后根据引擎的任务和identity link事件在事务提交后增量更新，定时与数据库重新对账；
+ * 按组查询数量是内存中的一次查找；按用户查询时，同一任务既把用户列为候选人又把用户所在的组列为候选组只计算一次
+ */
+@Slf4j
+@Service
+public class InboxCounterStore implements ActivitiEventListener {
+
+    private static final String TASK_SQL = "select ID_, ASSIGNEE_ from ACT_RU_TASK";
+
+    private static final String CANDIDATE_SQL = "select TASK_ID_, USER_ID_, GROUP_ID_ from ACT_RU_IDENTITYLINK "
+            + "where TYPE_ = 'candidate' and TASK_ID_ is not null";
+
+    @Autowired
+    private RuntimeService runtimeService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private GroupMembershipIndex groupMembershipIndex;
+
+    private final Object lock = new Object();
+
+    /**
+     * 对账互斥：同时对账会互相覆盖pendingDuringReconcile
+     */
+    private final Object reconcileLock = new Object();
+
+    private volatile Counters counters = new Counters();
+
+    /**
+     * 对账期间发生的变更，对账完成后在新数据上重放
+     */
+    private List<Consumer<Counters>> pendingDuringReconcile;
+
+    @PostConstruct
+    public void init() {
+        runtimeService.addEventListener(this,
+                ActivitiEventType.TASK_CREATED, ActivitiEventType.TASK_ASSIGNED, ActivitiEventType.TASK_COMPLETED,
+                ActivitiEventType.ENTITY_CREATED, ActivitiEventType.ENTITY_DELETED);
+        reconcile();
+    }
+
+    /**
+     * 用户的待办数：办理人是该用户，或未拾取且候选人/候选组包含该用户
+     */
+    public int countForUser(String userId) {
+        Counters current = counters;
+        List<Set<String>> candidateTasks = new ArrayList<>();
+        addIfPresent(candidateTasks, current.candidateUsers.get(userId));
+        for (String group : groupMembershipIndex.findGroups(userId)) {
+            addIfPresent(candidateTasks, current.candidateGroups.get(group));
+        }
+        int candidates;
+        if (candidateTasks.size() == 1) {
+            candidates = candidateTasks.get(0).size();
+        } else {
+            // 用户和组是同一任务的候选时只计算一次
+            Set<String> taskIds = new HashSet<>();
+            candidateTasks.forEach(taskIds::addAll);
+            candidates = taskIds.size();
+        }
+        return current.assigned.getOrDefault(userId, 0) + candidates;
+    }
+
+    /**
+     * 候选组包含该组且未拾取的任务数
+     */
+    public int countForGroup(String group) {
+        Set<String> taskIds = counters.candidateGroups.get(group);
+        return taskIds == null ? 0 : taskIds.size();
+    }
+
+    /**
+     * 办理人是该用户的任务数
+     */
+    public int countAssigned(String userId) {
+        return counters.assigned.getOrDefault(userId, 0);
+    }
+
+    /**
+     * 从数据库重新加载计数
+     */
+    @Scheduled(fixedDelayString = "${demo.inbox-counter.reconcile-interval-millis:300000}",
+            initialDelayString = "${demo.inbox-counter.reconcile-interval-millis:300000}")
+    public void reconcile() {
+        synchronized (reconcileLock) {
+            synchronized (lock) {
+                pendingDuringReconcile = new ArrayList<>();
+            }
+            Counters loaded = new Counters();
+            try {
+                jdbcTemplate.query(TASK_SQL, rs -> {
+                    loaded.setAssignee(rs.getString(1), rs.getString(2));
+                });
+                jdbcTemplate.query(CANDIDATE_SQL, rs -> {
+                    loaded.addCandidate(rs.getString(1), rs.getString(2), rs.getString(3));
+                });
+            } catch (RuntimeException e) {
+                synchronized (lock) {
+                    pendingDuringReconcile = null;
+                }
+                throw e;
+            }
+            synchronized (lock) {
+                List<Consumer<Counters>> pending = pendingDuringReconcile;
+                pendingDuringReconcile = null;
+                // 所有变更都是按状态设置的，已包含在加载结果中的变更重放后不会重复计数
+                pending.forEach(change -> change.accept(loaded));
+                counters = loaded;
+            }
+            log.info("> Inbox counters reconciled: {} open tasks", loaded.tasks.size());
+        }
+    }
+
+    @Override
+    public void onEvent(ActivitiEvent event) {
+        Consumer<Counters> change = toChange(event);
+        if (change == null) {
+            return;
+        }
+        TransactionContext transactionContext = Context.getTransactionContext();
+        if (transactionContext == null) {
+            apply(change);
+        } else {
+            transactionContext.addTransactionListener(TransactionState.COMMITTED, commandContext -> apply(change));
+        }
+    }
+
+    @Override
+    public boolean isFailOnException() {
+        return false;
+    }
+
+    private void apply(Consumer<Counters> change) {
+        synchronized (lock) {
+            change.accept(counters);
+            if (pendingDuringReconcile != null) {
+                pendingDuringReconcile.add(change);
+            }
+        }
+    }
+
+    private static void addIfPresent(List<Set<String>> candidateTasks, Set<String> taskIds) {
+        if (taskIds != null) {
+            candidateTasks.add(taskIds);
+        }
+    }
+
+    private Consumer<Counters> toChange(ActivitiEvent event) {
+        Object entity = ((ActivitiEntityEvent) event).getEntity();
+        if (entity instanceof Task) {
+            Task task = (Task) entity;
+            String taskId = task.getId();
+            switch (event.getType()) {
+                case TASK_CREATED:
+                case TASK_ASSIGNED:
+                    String assignee = task.getAssignee();
+                    return target -> target.setAssignee(taskId, assignee);
+                case TASK_COMPLETED:
+                case ENTITY_DELETED:
+                    return target -> target.removeTask(taskId);
+                default:
+                    return null;
+            }
+        }
+        if (entity instanceof IdentityLink) {
+            IdentityLink link = (IdentityLink) entity;
+            if (link.getTaskId() == null || !IdentityLinkType.CANDIDATE.equals(link.getType())) {
+                return null;
+            }
+            if (event.getType() == ActivitiEventType.ENTITY_CREATED) {
+                return target -> target.addCandidate(link.getTaskId(), link.getUserId(), link.getGroupId());
+            }
+            if (event.getType() == ActivitiEventType.ENTITY_DELETED) {
+                return target -> target.removeCandidate(link.getTaskId(), link.getUserId(), link.getGroupId());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 任务状态和由其得到的计数(办理人的任务数，候选人和候选组的任务ID)，只在持有lock时修改，计数可无锁读取
+     */
+    private static final class Counters {
+
+        private final Map<String, TaskState> tasks = new HashMap<>();
+
+        private final Map<String, Integer> assigned = new ConcurrentHashMap<>();
+
+        private final Map<String, Set<String>> candidateUsers = new ConcurrentHashMap<>();
+
+        private final Map<String, Set<String>> candidateGroups = new ConcurrentHashMap<>();
+
+        void setAssignee(String taskId, String assignee) {
+            TaskState state = tasks.computeIfAbsent(taskId, key -> new TaskState());
+            count(taskId, state, false);
+            state.assignee = assignee;
+            count(taskId, state, true);
+        }
+
+        void addCandidate(String taskId, String userId, String groupId) {
+            TaskState state = tasks.computeIfAbsent(taskId, key -> new TaskState());
+            count(taskId, state, false);
+            if (userId != null) {
+                state.users.add(userId);
+            }
+            if (groupId != null) {
+                state.groups.add(groupId);
+            }
+            count(taskId, state, true);
+        }
+
+        void removeCandidate(String taskId, String userId, String groupId) {
+            TaskState state = tasks.get(taskId);
+            if (state == null) {
+                return;
+            }
+            count(taskId, state, false);
+            state.users.remove(userId);
+            state.groups.remove(groupId);
+            count(taskId, state, true);
+        }
+
+        void removeTask(String taskId) {
+            TaskState state = tasks.remove(taskId);
+            if (state != null) {
+                count(taskId, state, false);
+            }
+        }
+
+        /**
+         * 计入或移除任务：已指定办理人时只计入办理人，否则计入每个候选人和候选组
+         */
+        private void count(String taskId, TaskState state, boolean include) {
+            if (state.assignee != null) {
+                add(assigned, state.assignee, include ? 1 : -1);
+                return;
+            }
+            state.users.forEach(user -> index(candidateUsers, user, taskId, include));
+            state.groups.forEach(group -> index(candidateGroups, group, taskId, include));
+        }
+
+        private static void add(Map<String, Integer> counts, String key, int delta) {
+            counts.compute(key, (k, value) -> {
+                int count = (value == null ? 0 : value) + delta;
+                return count <= 0 ? null : count;
+            });
+        }
+
+        private static void index(Map<String, Set<String>> taskIndex, String key, String taskId, boolean include) {
+            taskIndex.compute(key, (k, taskIds) -> {
+                if (include) {
+                    Set<String> result = taskIds == null ? ConcurrentHashMap.newKeySet() : taskIds;
+                    result.add(taskId);
+                    return result;
+                }
+                if (taskIds != null) {
+                    taskIds.remove(taskId);
+                }
+                return taskIds == null || taskIds.isEmpty() ? null : taskIds;
+            });
+        }
+    }
+
+    private static final class TaskState {
+
+        private String assignee;
+
+        private final Set<String> users = new HashSet<>(4);
+
+        private final Set<String> groups = new HashSet<>(2);
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.activity.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.activiti.engine.RepositoryService;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.delegate.event.ActivitiEntityEvent;
+import org.activiti.engine.delegate.event.ActivitiEvent;
+import org.activiti.engine.delegate.event.ActivitiEventListener;
+import org.activiti.engine.delegate.event.ActivitiEventType;
+import org.activiti.engine.impl.cfg.TransactionContext;
+import org.activiti.engine.impl.cfg.TransactionState;
+import org.activiti.engine.impl.context.Context;
+import org.activiti.engine.repository.Deployment;
+import org.activiti.engine.repository.ProcessDefinition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 流程定义目录缓存
+ * 全部流程定义按 key、key:version 缓存在内存中，分页列表也从内存返回；
+ * 本节点部署、挂起/激活时通过引擎事件失效，其他节点的变更通过定时比对部署和流程定义的签名发现
+ */
+@Slf4j
+@Service
+public class ProcessDefinitionCatalog implements ActivitiEventListener {
+
+    /**
+     * 部署数、最新部署时间、流程定义版本号之和、挂起的流程定义数；挂起/激活会更新REV_和SUSPENSION_STATE_
+     */
+    private static final String DEPLOYMENT_SIGNATURE_SQL = "select d.DEPLOYMENTS, d.LAST_DEPLOY_TIME, p.REVISIONS, p.SUSPENDED"
+            + " from (select count(*) DEPLOYMENTS, max(DEPLOY_TIME_) LAST_DEPLOY_TIME from ACT_RE_DEPLOYMENT) d,"
+            + " (select sum(REV_) REVISIONS, sum(case when SUSPENSION_STATE_ = 2 then 1 else 0 end) SUSPENDED"
+            + " from ACT_RE_PROCDEF) p";
+
+    @Autowired
+    private RepositoryService repositoryService;
+
+    @Autowired
+    private RuntimeService runtimeService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * 每次失效加一，加载期间发生过失效的结果不缓存
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private Counter hits;
+
+    private Counter misses;
+
+    @PostConstruct
+    public void init() {
+        hits = meterRegistry.counter("demo.process-catalog.requests", "result", "hit");
+        misses = meterRegistry.counter("demo.process-catalog.requests", "result", "miss");
+        // 部署和流程定义只有创建、删除、挂起、激活，不监听每次任务/执行更新都会触发的ENTITY_UPDATED
+        runtimeService.addEventListener(this,
+                ActivitiEventType.ENTITY_CREATED, ActivitiEventType.ENTITY_DELETED,
+                ActivitiEventType.ENTITY_SUSPENDED, ActivitiEventType.ENTITY_ACTIVATED);
+    }
+
+    /**
+     * 流程key的最新版本，不存在时返回null
+     */
+    public ProcessDefinition findLatest(String processDefinitionKey) {
+        return current().latest.get(processDefinitionKey);
+    }
+
+    public ProcessDefinition find(String processDefinitionKey, int version) {
+        return current().byVersion.get(processDefinitionKey + ":" + version);
+    }
+
+    /**
+     * 全部流程定义，按key、版本排序
+     * @param firstResult 起始位置
+     * @param maxResults 条数
+     */
+    public List<ProcessDefinition> list(int firstResult, int maxResults) {
+        List<ProcessDefinition> all = current().all;
+        if (firstResult >= all.size()) {
+            return Collections.emptyList();
+        }
+        return all.subList(firstResult, Math.min(all.size(), firstResult + maxResults));
+    }
+
+    public int count() {
+        return current().all.size();
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+        snapshot = null;
+    }
+
+    /**
+     * 其他节点部署、删除部署或挂起/激活流程定义时，签名会变化
+     */
+    @Scheduled(fixedDelayString = "${demo.process-catalog.poll-interval-millis:30000}")
+    public void pollDeployments() {
+        Snapshot current = snapshot;
+        if (current != null && !current.deploymentSignature.equals(deploymentSignature())) {
+            log.info("> Deployments or process definition states changed, process definition catalog invalidated");
+            invalidate();
+        }
+    }
+
+    @Override
+    public void onEvent(ActivitiEvent event) {
+        Object entity = ((ActivitiEntityEvent) event).getEntity();
+        if (!(entity instanceof ProcessDefinition) && !(entity instanceof Deployment)) {
+            return;
+        }
+        TransactionContext transactionContext = Context.getTransactionContext();
+        if (transactionContext == null) {
+            invalidate();
+        } else {
+            transactionContext.addTransactionListener(TransactionState.COMMITTED, commandContext -> invalidate());
+        }
+    }
+
+    @Override
+    public boolean isFailOnException() {
+        return false;
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            hits.increment();
+            return current;
+        }
+        misses.increment();
+        synchronized (this) {
+            current = snapshot;
+            if (current != null) {
+                return current;
+            }
+            long loadGeneration = generation.get();
+            Snapshot loaded = load();
+            snapshot = loaded;
+            // 加载期间提交的部署或挂起/激活可能没有包含在结果中，只返回给本次调用，不缓存
+            if (generation.get() != loadGeneration) {
+                snapshot = null;
+            }
+            return loaded;
+        }
+    }
+
+    private Snapshot load() {
+        // 先取部署签名再查流程定义，期间发生的部署会在下次轮询时失效
+        String signature = deploymentSignature();
+        List<ProcessDefinition> all = repositoryService.createProcessDefinitionQuery()
+                .orderByProcessDefinitionKey().asc()
+                .orderByProcessDefinitionVersion().asc()
+                .list();
+        Map<String, ProcessDefinition> latest = new HashMap<>();
+        Map<String, ProcessDefinition> byVersion = new HashMap<>();
+        for (ProcessDefinition definition : all) {
+            latest.merge(definition.getKey(), definition,
+                    (current, candidate) -> candidate.getVersion() > current.getVersion() ? candidate : current);
+            byVersion.put(definition.getKey() + ":" + definition.getVersion(), definition);
+        }
+        log.info("> Loaded {} process definitions into catalog", all.size());
+        return new Snapshot(Collections.unmodifiableList(all), latest, byVersion, signature);
+    }
+
+    private String deploymentSignature() {
+        return jdbcTemplate.query(DEPLOYMENT_SIGNATURE_SQL,
+                rs -> rs.next() ? rs.getLong(1) + "@" + rs.getTimestamp(2) + "/" + rs.getLong(3) + "/" + rs.getLong(4) : "0");
+    }
+
+    private static final class Snapshot {
+
+        private final List<ProcessDefinition> all;
+
+        private final Map<String, ProcessDefinition> latest;
+
+        private final Map<String, ProcessDefinition> byVersion;
+
+        private final String deploymentSignature;
+
+        private Snapshot(List<ProcessDefinition> all, Map<String, ProcessDefinition> latest,
+                         Map<String, ProcessDefinition> byVersion, String deploymentSignature) {
+            this.all = all;
+            this.latest = latest;
+            this.byVersion = byVersion;
+            this.deploymentSignature = deploymentSignature;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.activity.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.activiti.bpmn.converter.BpmnXMLConverter;
+import org.activiti.bpmn.model.BpmnModel;
+import org.activiti.engine.RepositoryService;
+import org.activiti.engine.repository.Deployment;
+import org.activiti.validation.ValidationError;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.PreDestroy;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 启动后自动部署流程目录下的bpmn文件
+ * 部署在后台线程中进行，不阻塞启动；文件内容的sha-256保存在部署的category中，
+ * 内容与同名的最新部署相同的文件不重复部署，也就不会产生新的流程定义版本。
+ * 资源名和部署名取文件相对于流程目录的路径，不同子目录下的同名文件互不覆盖
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "demo.deployer", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class ProcessResourceDeployer {
+
+    @Autowired
+    private RepositoryService repositoryService;
+
+    @Value("${spring.activiti.process-definition-location-prefix:classpath:/process/}")
+    private String locationPrefix;
+
+    @Value("${demo.deployer.threads:4}")
+    private int threads;
+
+    private ExecutorService executor;
+
+    private volatile CompletableFuture<List<Deployment>> deployment = CompletableFuture.completedFuture(new ArrayList<>());
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        deployment = deployAll();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 最近一次自动部署的结果，只包含实际部署了的文件
+     */
+    public CompletableFuture<List<Deployment>> getDeployment() {
+        return deployment;
+    }
+
+    public synchronized CompletableFuture<List<Deployment>> deployAll() {
+        if (executor == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(Math.max(1, threads),
+                    runnable -> new Thread(runnable, "process-deployer-" + threadNumber.incrementAndGet()));
+        }
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        Resource[] resources;
+        String root;
+        try {
+            resources = resolver.getResources(locationPrefix + "**/*.bpmn");
+            root = resolver.getResource(locationPrefix).getURL().toString();
+        } catch (IOException e) {
+            log.error("> Cannot scan process resources under {}", locationPrefix, e);
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+
+        List<CompletableFuture<Deployment>> futures = new ArrayList<>(resources.length);
+        for (Resource resource : resources) {
+            String path = relativePath(root, resource);
+            futures.add(CompletableFuture.supplyAsync(() -> deploy(path, resource), executor).exceptionally(e -> {
+                log.error("> Failed to deploy {}", path, e);
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> futures.stream()
+                        .map(CompletableFuture::join)
+                        .filter(deployment -> deployment != null)
+                        .collect(Collectors.toList()));
+    }
+
+    /**
+     * 文件相对于流程目录的路径，如 demo_process.bpmn、hr/leave.bpmn
+     */
+    private static String relativePath(String root, Resource resource) {
+        try {
+            String url = resource.getURL().toString();
+            if (url.startsWith(root)) {
+                String path = url.substring(root.length());
+                return path.startsWith("/") ? path.substring(1) : path;
+            }
+        } catch (IOException e) {
+            log.warn("> Cannot resolve path of {}, using file name", resource, e);
+        }
+        return resource.getFilename();
+    }
+
+    /**
+     * 校验并部署单个文件，内容未变化或校验不通过时返回null
+     * @param filename 相对于流程目录的路径，作为资源名
+     */
+    private Deployment deploy(String filename, Resource resource) {
+        String name = filename.substring(0, filename.lastIndexOf('.'));
+        byte[] content;
+        try (InputStream in = resource.getInputStream()) {
+            content = StreamUtils.copyToByteArray(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + filename, e);
+        }
+
+        String hash = sha256(content);
+        // 只和同名的最新部署比较：内容改回之前的版本(A->B->A)时要重新部署
+        List<Deployment> latest = repositoryService.createDeploymentQuery().deploymentName(name)
+                .orderByDeploymenTime().desc().listPage(0, 1);
+        if (!latest.isEmpty() && hash.equals(latest.get(0).getCategory())) {
+            log.info("> {} unchanged, skip deployment", filename);
+            return null;
+        }
+
+        List<ValidationError> errors = repositoryService.validateProcess(parse(content)).stream()
+                .filter(error -> !error.isWarning())
+                .collect(Collectors.toList());
+        if (!errors.isEmpty()) {
+            log.error("> {} is invalid, skip deployment: {}", filename, errors);
+            return null;
+        }
+
+        // 与数据库中同名的最新部署内容相同时，引擎也会跳过(duplicate filtering)
+        Deployment deployment = repositoryService.createDeployment()
+                .name(name)
+                .category(hash)
+                .addBytes(filename, content)
+                .enableDuplicateFiltering()
+                .deploy();
+        log.info("> Deployed {} as deployment {}", filename, deployment.getId());
+        return deployment;
+    }
+
+    private static BpmnModel parse(byte[] content) {
+        try {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            XMLStreamReader reader = factory.createXMLStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8.name());
+            return new BpmnXMLConverter().convertToBpmnModel(reader);
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Invalid BPMN xml", e);
+        }
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.activity.service;
+
+import com.example.activity.dto.InboxCursor;
+import com.example.activity.dto.InboxPage;
+import com.example.activity.dto.InboxTask;
+import com.example.activity.identity.GroupMembershipIndex;
+import com.example.activity.job.LaneAsyncJobExecutor;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.TaskService;
+import org.activiti.engine.runtime.ProcessInstance;
+import org.activiti.engine.task.NativeTaskQuery;
+import org.activiti.engine.task.Task;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 我的待办查询
+ * 每页固定两次查询：一次按游标(创建时间+任务id)查任务，一次按流程实例id批量查业务key等字段，
+ * 避免逐条任务再查一次流程实例(N+1)
+ */
+@Service
+public class TaskInboxService {
+
+    /**
+     * 按id查询任务时IN列表单批的最大id数
+     */
+    private static final int ID_CHUNK_SIZE = 500;
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private RuntimeService runtimeService;
+
+    @Autowired
+    private GroupMembershipIndex groupMembershipIndex;
+
+    /**
+     * 查询用户作为办理人或候选人(含候选组)的待办任务
+     * @param userId 用户
+     * @param processDefinitionKey 流程key，为空时查询全部流程
+     * @param after 上一页返回的游标，第一页传null
+     * @param pageSize 每页条数
+     * @return
+     */
+    public InboxPage findInbox(String userId, String processDefinitionKey, InboxCursor after, int pageSize) {
+        List<Task> tasks = createInboxQuery(userId, processDefinitionKey, after).listPage(0, pageSize);
+        if (tasks.isEmpty()) {
+            return new InboxPage(Collections.emptyList(), null);
+        }
+
+        Set<String> processInstanceIds = tasks.stream().map(Task::getProcessInstanceId).collect(Collectors.toSet());
+        Map<String, ProcessInstance> instances = runtimeService.createProcessInstanceQuery()
+                .processInstanceIds(processInstanceIds)
+                .list()
+                .stream()
+                .collect(Collectors.toMap(ProcessInstance::getId, Function.identity()));
+
+        List<InboxTask> content = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            content.add(toInboxTask(task, instances.get(task.getProcessInstanceId())));
+        }
+        Task last = tasks.get(tasks.size() - 1);
+        InboxCursor next = tasks.size() < pageSize ? null : new InboxCursor(last.getCreateTime(), last.getId());
+        return new InboxPage(content, next);
+    }
+
+    /**
+     * 用户所在的组
+     */
+    protected List<String> findGroups(String userId) {
+        return groupMembershipIndex.findGroups(userId);
+    }
+
+    /**
+     * 按id查询用户可以办理的任务(办理人是该用户，或未指派且用户是候选人/候选组成员)，其他任务不返回
+     * @return 任务id -> 任务
+     */
+    public Map<String, Task> findAccessibleTasks(String userId, Collection<String> taskIds) {
+        Map<String, Task> tasks = new LinkedHashMap<>();
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(taskIds));
+        for (int from = 0; from < ids.size(); from += ID_CHUNK_SIZE) {
+            List<String> chunk = ids.subList(from, Math.min(from + ID_CHUNK_SIZE, ids.size()));
+            NativeTaskQuery query = taskService.createNativeTaskQuery();
+            StringBuilder sql = new StringBuilder("select distinct RES.* from ACT_RU_TASK RES")
+                    .append(" left join ACT_RU_IDENTITYLINK I on I.TASK_ID_ = RES.ID_")
+                    .append(" where RES.ID_ in (");
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "" : ", ").append("#{id").append(i).append("}");
+                query.parameter("id" + i, chunk.get(i));
+            }
+            sql.append(") and ");
+            appendAccessCondition(sql, query, userId);
+            for (Task task : query.sql(sql.toString()).list()) {
+                tasks.put(task.getId(), task);
+            }
+        }
+        return tasks;
+    }
+
+    private NativeTaskQuery createInboxQuery(String userId, String processDefinitionKey, InboxCursor after) {
+        NativeTaskQuery query = taskService.createNativeTaskQuery();
+
+        StringBuilder sql = new StringBuilder("select distinct RES.* from ACT_RU_TASK RES")
+                .append(" left join ACT_RU_IDENTITYLINK I on I.TASK_ID_ = RES.ID_")
+                .append(" where ");
+        appendAccessCondition(sql, query, userId);
+
+        if (processDefinitionKey != null && !processDefinitionKey.isEmpty()) {
+            // 流程定义id的格式为 key:version:id，key中的_和%按字面匹配
+            sql.append(" and RES.PROC_DEF_ID_ like #{processDefinitionIdLike} escape '!'");
+            query.parameter("processDefinitionIdLike", LaneAsyncJobExecutor.processDefinitionIdPattern(processDefinitionKey));
+        }
+        if (after != null) {
+            sql.append(" and (RES.CREATE_TIME_ > #{afterTime} or (RES.CREATE_TIME_ = #{afterTime} and RES.ID_ > #{afterId}))");
+            query.parameter("afterTime", after.getCreateTime());
+            query.parameter("afterId", after.getTaskId());
+        }
+        sql.append(" order by RES.CREATE_TIME_ asc, RES.ID_ asc");
+        return query.sql(sql.toString());
+    }
+
+    /**
+     * 办理人是该用户，或未指派且用户是候选人/候选组成员，需要关联ACT_RU_IDENTITYLINK(别名I)
+     */
+    private void appendAccessCondition(StringBuilder sql, NativeTaskQuery query, String userId) {
+        List<String> groups = findGroups(userId);
+        sql.append("(RES.ASSIGNEE_ = #{userId}")
+                .append(" or (RES.ASSIGNEE_ is null and I.TYPE_ = 'candidate' and (I.USER_ID_ = #{userId}");
+        query.parameter("userId", userId);
+        if (!groups.isEmpty()) {
+            sql.append(" or I.GROUP_ID_ in (");
+            for (int i = 0; i < groups.size(); i++) {
+                sql.append(i == 0 ? "" : ", ").append("#{group").append(i).append("}");
+                query.parameter("group" + i, groups.get(i));
+            }
+            sql.append(")");
+        }
+        sql.append(")))");
+    }
+
+    private InboxTask toInboxTask(Task task, ProcessInstance processInstance) {
+        InboxTask inboxTask = new InboxTask();
+        inboxTask.setTaskId(task.getId());
+        inboxTask.setTaskName(task.getName());
+        inboxTask.setTaskDefinitionKey(task.getTaskDefinitionKey());
+        inboxTask.setAssignee(task.getAssignee());
+        inboxTask.setCreateTime(task.getCreateTime());
+        inboxTask.setProcessInstanceId(task.getProcessInstanceId());
+        inboxTask.setProcessDefinitionId(task.getProcessDefinitionId());
+        if (processInstance != null) {
+            inboxTask.setBusinessKey(processInstance.getBusinessKey());
+            inboxTask.setProcessStartTime(processInstance.getStartTime());
+        }
+        return inboxTask;
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.activity.util;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 带过期时间和容量上限的LRU缓存
+ * 加载数据时不持有锁，并发加载同一个key时以先写入的为准；加载期间该key被失效时，加载结果只返回给调用方，不写入缓存
+ */
+public class ExpiringLruCache<K, V> {
+
+    private final int maxSize;
+
+    private final long ttlNanos;
+
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    /**
+     * 正在加载的key及其并发加载数，只为这些key记录失效版本
+     */
+    private final Map<K, Integer> loading = new HashMap<>();
+
+    /**
+     * 正在加载的key最后一次失效时的版本
+     */
+    private final Map<K, Long> invalidatedAt = new HashMap<>();
+
+    /**
+     * 每次失效加一
+     */
+    private long version;
+
+    private long allInvalidatedAt;
+
+    public ExpiringLruCache(int maxSize, long ttl, TimeUnit unit) {
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > ExpiringLruCache.this.maxSize;
+            }
+        };
+    }
+
+    public V get(K key) {
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expireAt - System.nanoTime() <= 0) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+    }
+
+    public void put(K key, V value) {
+        synchronized (entries) {
+            entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+        }
+    }
+
+    /**
+     * 缓存中没有时调用loader加载，loader返回null时不缓存
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        long loadVersion;
+        synchronized (entries) {
+            loadVersion = version;
+            loading.merge(key, 1, Integer::sum);
+        }
+        V loaded;
+        try {
+            loaded = loader.apply(key);
+        } catch (RuntimeException | Error e) {
+            synchronized (entries) {
+                finishLoad(key);
+            }
+            throw e;
+        }
+        synchronized (entries) {
+            // 加载期间被失效时，加载结果可能是失效前的数据
+            boolean invalidated = allInvalidatedAt > loadVersion || invalidatedAt.getOrDefault(key, 0L) > loadVersion;
+            finishLoad(key);
+            if (loaded == null || invalidated) {
+                return loaded;
+            }
+            Entry<V> current = entries.get(key);
+            if (current != null && current.expireAt - System.nanoTime() > 0) {
+                return current.value;
+            }
+            entries.put(key, new Entry<>(loaded, System.nanoTime() + ttlNanos));
+            return loaded;
+        }
+    }
+
+    public void invalidate(K key) {
+        synchronized (entries) {
+            version++;
+            entries.remove(key);
+            if (loading.containsKey(key)) {
+                invalidatedAt.put(key, version);
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            version++;
+            allInvalidatedAt = version;
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * 调用时持有entries的锁
+     */
+    private void finishLoad(K key) {
+        if (loading.merge(key, -1, Integer::sum) == 0) {
+            loading.remove(key);
+            invalidatedAt.remove(key);
+        }
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+
+        private final long expireAt;
+
+        private Entry(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
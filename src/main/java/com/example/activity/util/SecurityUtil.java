@@ -1,18 +1,24 @@
 package com.example.activity.util;
 
+import com.example.activity.identity.ObservableUserDetailsManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Component;
 
-import java.util.Collection;
+import javax.annotation.PostConstruct;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 
 @Component
@@ -22,45 +28,95 @@ public class SecurityUtil {
      @Autowired
      @Qualifier("myUserDetailsService")
      private UserDetailsService userDetailsService;
- 
+
+    /**
+     * 缓存的登录用户数上限
+     */
+    @Value("${demo.security.identity-cache.max-size:1000}")
+    private int identityCacheMaxSize = 1000;
+
+    /**
+     * 缓存的登录信息过期时间(秒)
+     */
+    @Value("${demo.security.identity-cache.ttl-seconds:600}")
+    private long identityCacheTtlSeconds = 600;
+
+    /**
+     * 用户名 -> 登录信息，缓存的是不可修改的ImmutableAuthenticationToken，可在线程间共享
+     */
+    private ExpiringLruCache<String, Authentication> identityCache;
+
+    @PostConstruct
+    public void init() {
+        identityCache = new ExpiringLruCache<>(identityCacheMaxSize, identityCacheTtlSeconds, TimeUnit.SECONDS);
+        if (userDetailsService instanceof ObservableUserDetailsManager) {
+            ((ObservableUserDetailsManager) userDetailsService).addListener(identityCache::invalidate);
+        }
+    }
+
     public void logInAs(String username) {
-     UserDetails user = userDetailsService.loadUserByUsername(username);
-
-     if (user == null) {
-         throw new IllegalStateException("User " + username + " doesn't exist, please provide a valid user");
-     }
-     logger.info("> Logged in as: " + username);
-
-     SecurityContextHolder.setContext(
-             new SecurityContextImpl(
-                     new Authentication() {
-                         @Override
-                         public Collection<? extends GrantedAuthority> getAuthorities() {
-                             return user.getAuthorities();
-                         }
-                         @Override
-                         public Object getCredentials() {
-                             return user.getPassword();
-                         }
-                         @Override
-                         public Object getDetails() {
-                             return user;
-                         }
-                         @Override
-                         public Object getPrincipal() {
-                             return user;
-                         }
-                         @Override
-                         public boolean isAuthenticated() {
-                             return true;
-                         }
-                         @Override
-                         public void setAuthenticated(boolean isAuthenticated) throws IllegalArgumentException { }
-                         @Override
-                         public String getName() {
-                             return user.getUsername();
-                         }
-     }));
-     org.activiti.engine.impl.identity.Authentication.setAuthenticatedUserId(username);
- }
-  }
\ No newline at end of file
+        Authentication authentication = identityCache.computeIfAbsent(username, this::createAuthentication);
+        logger.debug("> Logged in as: {}", username);
+
+        SecurityContextHolder.setContext(new SecurityContextImpl(authentication));
+        org.activiti.engine.impl.identity.Authentication.setAuthenticatedUserId(username);
+    }
+
+    /**
+     * 以指定用户身份执行，执行完后恢复当前线程原来的登录信息，避免线程池中的线程残留身份
+     */
+    public <T> T runAs(String username, Callable<T> callable) throws Exception {
+        SecurityContext previousContext = SecurityContextHolder.getContext();
+        String previousUserId = org.activiti.engine.impl.identity.Authentication.getAuthenticatedUserId();
+        try {
+            logInAs(username);
+            return callable.call();
+        } finally {
+            SecurityContextHolder.setContext(previousContext);
+            org.activiti.engine.impl.identity.Authentication.setAuthenticatedUserId(previousUserId);
+        }
+    }
+
+    /**
+     * 清除指定用户缓存的登录信息
+     */
+    public void invalidate(String username) {
+        identityCache.invalidate(username);
+    }
+
+    private Authentication createAuthentication(String username) {
+        UserDetails user = userDetailsService.loadUserByUsername(username);
+
+        if (user == null) {
+            throw new IllegalStateException("User " + username + " doesn't exist, please provide a valid user");
+        }
+        return new ImmutableAuthenticationToken(user);
+    }
+
+    /**
+     * 不可修改的登录信息：setDetails和setAuthenticated抛出异常，eraseCredentials不做任何事；
+     * principal是不含密码的用户副本，不和UserDetailsService中的对象共用
+     */
+    static final class ImmutableAuthenticationToken extends UsernamePasswordAuthenticationToken {
+
+        ImmutableAuthenticationToken(UserDetails user) {
+            super(new User(user.getUsername(), "", user.isEnabled(), user.isAccountNonExpired(),
+                    user.isCredentialsNonExpired(), user.isAccountNonLocked(), user.getAuthorities()),
+                    null, user.getAuthorities());
+        }
+
+        @Override
+        public void setAuthenticated(boolean authenticated) {
+            throw new UnsupportedOperationException("Cached authentication is immutable");
+        }
+
+        @Override
+        public void setDetails(Object details) {
+            throw new UnsupportedOperationException("Cached authentication is immutable");
+        }
+
+        @Override
+        public void eraseCredentials() {
+        }
+    }
+  }
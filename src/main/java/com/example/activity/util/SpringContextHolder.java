@@ -0,0 +1,28 @@
+package com.example.activity.util;
+
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.stereotype.Component;
+
+/**
+ * 保存Spring容器，供不由Spring创建的对象(如引擎按class反射创建的监听器)获取Bean
+ */
+@Component
+public class SpringContextHolder implements ApplicationContextAware {
+
+    private static volatile ApplicationContext applicationContext;
+
+    @Override
+    public void setApplicationContext(ApplicationContext context) throws BeansException {
+        applicationContext = context;
+    }
+
+    public static <T> T getBean(Class<T> type) {
+        ApplicationContext context = applicationContext;
+        if (context == null) {
+            throw new IllegalStateException("Spring application context is not initialized yet");
+        }
+        return context.getBean(type);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.activity.variable;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * 候选人集合类型的流程变量，如candidateUsers
+ * 不可修改，可直接作为 activiti:candidateUsers="${candidateUsers}" 的表达式结果，引擎不再按逗号拆分字符串；
+ * 数据库中以逗号分隔的文本保存在TEXT_字段，不走序列化
+ */
+public final class CandidateList extends AbstractList<String> implements RandomAccess, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final char SEPARATOR = ',';
+
+    private final String[] ids;
+
+    private CandidateList(String[] ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * 去掉空值和重复值，保持原有顺序
+     */
+    public static CandidateList of(Collection<String> ids) {
+        Set<String> distinct = new LinkedHashSet<>();
+        for (String id : ids) {
+            if (id == null || id.trim().isEmpty()) {
+                continue;
+            }
+            String trimmed = id.trim();
+            if (trimmed.indexOf(SEPARATOR) >= 0) {
+                throw new IllegalArgumentException("Candidate id must not contain '" + SEPARATOR + "': " + trimmed);
+            }
+            distinct.add(trimmed);
+        }
+        return new CandidateList(distinct.toArray(new String[0]));
+    }
+
+    public static CandidateList of(String... ids) {
+        return of(Arrays.asList(ids));
+    }
+
+    static CandidateList parse(String text) {
+        if (text == null || text.isEmpty()) {
+            return new CandidateList(new String[0]);
+        }
+        return of(Arrays.asList(text.split(String.valueOf(SEPARATOR))));
+    }
+
+    String format() {
+        return String.join(String.valueOf(SEPARATOR), ids);
+    }
+
+    @Override
+    public String get(int index) {
+        return ids[index];
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.activity.variable;
+
+import com.example.activity.util.ExpiringLruCache;
+import org.activiti.engine.impl.variable.ValueFields;
+import org.activiti.engine.impl.variable.VariableType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CandidateList的变量类型，值以逗号分隔的文本保存在TEXT_字段
+ * 超过TEXT_长度(varchar(4000))的文本与引擎的LongStringType一样以UTF-8保存在字节数组(ACT_GE_BYTEARRAY)中；
+ * 解析结果按文本缓存，同一候选人集合在多个流程实例、多次任务创建之间只解析一次
+ */
+public class CandidateListType implements VariableType {
+
+    public static final String TYPE_NAME = "candidateList";
+
+    /**
+     * TEXT_字段的长度，与引擎StringType的上限相同
+     */
+    static final int MAX_TEXT_LENGTH = 4000;
+
+    private final ExpiringLruCache<String, CandidateList> parsed = new ExpiringLruCache<>(10000, 1, TimeUnit.HOURS);
+
+    @Override
+    public String getTypeName() {
+        return TYPE_NAME;
+    }
+
+    @Override
+    public boolean isCachable() {
+        return true;
+    }
+
+    @Override
+    public boolean isAbleToStore(Object value) {
+        return value instanceof CandidateList;
+    }
+
+    @Override
+    public void setValue(Object value, ValueFields valueFields) {
+        String text = value == null ? null : ((CandidateList) value).format();
+        if (text != null && text.length() > MAX_TEXT_LENGTH) {
+            valueFields.setTextValue(null);
+            valueFields.setBytes(text.getBytes(StandardCharsets.UTF_8));
+        } else {
+            valueFields.setTextValue(text);
+            // 之前保存在字节数组中的长列表
+            valueFields.setBytes(null);
+        }
+    }
+
+    @Override
+    public Object getValue(ValueFields valueFields) {
+        String text = valueFields.getTextValue();
+        if (text != null) {
+            return parsed.computeIfAbsent(text, CandidateList::parse);
+        }
+        byte[] bytes = valueFields.getBytes();
+        // 长列表不放入缓存，避免缓存以长文本为键
+        return bytes == null ? null : CandidateList.parse(new String(bytes, StandardCharsets.UTF_8));
+    }
+}
@@ -1,5 +1,8 @@
 package com.example.activity;
 
+import com.example.activity.dto.BatchApprovalResult;
+import com.example.activity.service.BatchApprovalService;
+import com.example.activity.service.ProcessDefinitionCatalog;
 import com.example.activity.util.SecurityUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.activiti.api.process.model.ProcessDefinition;
@@ -13,6 +16,7 @@ import org.activiti.api.task.model.builders.TaskPayloadBuilder;
 import org.activiti.api.task.runtime.TaskRuntime;
 import org.activiti.engine.HistoryService;
 import org.activiti.engine.RepositoryService;
+import org.activiti.engine.TaskService;
 import org.activiti.engine.history.HistoricActivityInstance;
 import org.activiti.engine.history.HistoricActivityInstanceQuery;
 import org.activiti.engine.repository.Deployment;
@@ -22,6 +26,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  *   使用注入activity7新版的api,受springSecurity影响，
@@ -49,6 +57,15 @@ class Activity7ApplicationTests {
     @Autowired
     private HistoryService historyService;
 
+    @Autowired
+    private BatchApprovalService batchApprovalService;
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private ProcessDefinitionCatalog processDefinitionCatalog;
+
     /**
      * 自动建表...(如果bpmn的目录是processes的默目录下，还会自动部署流程。否则需要手动部署流程)
      */
@@ -93,6 +110,20 @@ class Activity7ApplicationTests {
         }
     }
 
+    /**
+     * 流程定义查询(缓存)，第一次从数据库加载，之后从内存返回，部署新流程后自动失效
+     */
+    @Test
+    public void findProcessCached(){
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            List<org.activiti.engine.repository.ProcessDefinition> definitions = processDefinitionCatalog.list(0, 10);
+            log.info("第{}次查询，流程定义总数：{}，耗时{}us", i + 1, processDefinitionCatalog.count(),
+                    (System.nanoTime() - start) / 1000);
+        }
+        log.info("demo1最新版本：{}", processDefinitionCatalog.findLatest("demo1"));
+    }
+
     /**
      * 启动流程
      *  本次demo流程是先由jack发起申请，然后完成申请任务后
@@ -139,6 +170,29 @@ class Activity7ApplicationTests {
 
     }
 
+    /**
+     * 批量审批：拾取并完成rose待办中的任务，每批一个事务，不同流程实例的批次并发执行
+     */
+    @Test
+    public void doTaskBatch(){
+        BatchApprovalResult result = batchApprovalService.approveInbox("rose", "demo1", 500, "同意");
+        log.info("完成{}个任务，耗时{}ms", result.getCompleted().size(), result.getElapsedMillis());
+        result.getFailures().forEach((taskId, reason) -> log.info("任务{}审批失败：{}", taskId, reason));
+    }
+
+    /**
+     * 批量审批不能办理不是自己的任务：jack的任务由tom批量审批，全部失败
+     */
+    @Test
+    public void doTaskBatchNotCandidate(){
+        List<String> taskIds = taskService.createTaskQuery().taskAssignee("jack").listPage(0, 10).stream()
+                .map(task -> task.getId())
+                .collect(Collectors.toList());
+        BatchApprovalResult result = batchApprovalService.approve("tom", taskIds, "同意");
+        assertTrue(result.getCompleted().isEmpty());
+        assertEquals(taskIds.size(), result.getFailures().size());
+    }
+
     /**
      * 流程结束，或流程流转过程中的历史信息查询
      */
@@ -1,5 +1,24 @@
 package com.example.activity;
 
+import com.example.activity.dto.ArchivedProcessInstance;
+import com.example.activity.dto.ClaimResult;
+import com.example.activity.dto.DoneTask;
+import com.example.activity.dto.HistoryExportResult;
+import com.example.activity.dto.InboxCursor;
+import com.example.activity.dto.InboxPage;
+import com.example.activity.dto.InboxTask;
+import com.example.activity.dto.ProcessPosition;
+import com.example.activity.dto.TimelineEntry;
+import com.example.activity.history.HistoryArchiver;
+import com.example.activity.metrics.SqlStatementCounter;
+import com.example.activity.service.AuditTimelineService;
+import com.example.activity.service.BusinessKeyIndex;
+import com.example.activity.service.CandidateVariableService;
+import com.example.activity.service.ClaimCoordinator;
+import com.example.activity.service.HistoryExportService;
+import com.example.activity.service.HistoryProjectionService;
+import com.example.activity.service.HistoryQueryService;
+import com.example.activity.service.TaskInboxService;
 import lombok.extern.slf4j.Slf4j;
 import org.activiti.engine.HistoryService;
 import org.activiti.engine.RepositoryService;
@@ -17,8 +36,12 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.nio.file.Paths;
 import java.util.*;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 
 /**
  *   使用注入activity原先的api,不会受springSecurity影响
@@ -40,6 +63,33 @@ class ActivityApplicationTests {
     @Autowired
     private HistoryService historyService;
 
+    @Autowired
+    private TaskInboxService taskInboxService;
+
+    @Autowired
+    private HistoryProjectionService historyProjectionService;
+
+    @Autowired
+    private AuditTimelineService auditTimelineService;
+
+    @Autowired
+    private CandidateVariableService candidateVariableService;
+
+    @Autowired
+    private HistoryExportService historyExportService;
+
+    @Autowired
+    private HistoryArchiver historyArchiver;
+
+    @Autowired
+    private HistoryQueryService historyQueryService;
+
+    @Autowired
+    private BusinessKeyIndex businessKeyIndex;
+
+    @Autowired
+    private ClaimCoordinator claimCoordinator;
+
     /**
      * 自动建表...(如果bpmn的目录是processes的默目录下，还会自动部署流程。否则需要手动部署流程)
      */
@@ -100,6 +150,18 @@ class ActivityApplicationTests {
         taskService.setVariable("e82a85f4-9517-11ec-9736-4eebbd9ecca7", "candidateUsers", candidateUser);
     }
 
+    /**
+     * 以集合形式设置候选人变量，引擎创建任务时直接使用集合，不再拆分逗号字符串
+     */
+    @Test
+    public void setCandidateListVariable(){
+        candidateVariableService.setTaskCandidates("e82a85f4-9517-11ec-9736-4eebbd9ecca7", "candidateUsers",
+                Arrays.asList("rose", "tom", "jack"));
+        for (Task task : candidateVariableService.findOpenTasksListing("rose", 0, 10)) {
+            System.out.println("候选人包含rose的任务：" + task.getId());
+        }
+    }
+
     /**
      * 任务查询
      */
@@ -129,6 +191,50 @@ class ActivityApplicationTests {
         }
     }
 
+    /**
+     * 任务查询(批量)，与testFindPersonalTaskList对比
+     * 原写法每个任务再查一次流程实例，查询次数为 1+N；TaskInboxService每页固定2次查询
+     */
+    @Test
+    public void testFindPersonalTaskListBatched() {
+        String assignee = "jack";
+
+        long start = System.currentTimeMillis();
+        int statements = SqlStatementCounter.current();
+        List<Task> list = taskService.createTaskQuery()
+                .processDefinitionKey("demo0")
+                .taskCandidateOrAssigned(assignee)
+                .list();
+        for (Task task : list) {
+            runtimeService.createProcessInstanceQuery().processInstanceId(task.getProcessInstanceId()).singleResult();
+        }
+        int perTaskStatements = SqlStatementCounter.current() - statements;
+        log.info("逐条查询：任务数{}，查询次数{}，耗时{}ms", list.size(), perTaskStatements, System.currentTimeMillis() - start);
+
+        start = System.currentTimeMillis();
+        statements = SqlStatementCounter.current();
+        int total = 0;
+        int pages = 0;
+        InboxCursor cursor = null;
+        do {
+            InboxPage page = taskInboxService.findInbox(assignee, "demo0", cursor, 50);
+            pages++;
+            total += page.getContent().size();
+            for (InboxTask task : page.getContent()) {
+                System.out.println("流程的业务key：" + task.getBusinessKey() + "，任务id：" + task.getTaskId());
+            }
+            cursor = page.getNext();
+        } while (cursor != null);
+        int batchedStatements = SqlStatementCounter.current() - statements;
+        log.info("批量查询：任务数{}，页数{}，查询次数{}，耗时{}ms", total, pages, batchedStatements, System.currentTimeMillis() - start);
+
+        assertEquals(list.size(), total);
+        assertTrue(batchedStatements <= 2 * pages, "每页最多2次查询，实际" + batchedStatements + "次/" + pages + "页");
+        if (list.size() > 2) {
+            assertTrue(batchedStatements < perTaskStatements);
+        }
+    }
+
     @Test
     public void testFindPersonalDoneTaskList() {
         Set<String> proInstanceIds = new HashSet<>();
@@ -162,6 +268,22 @@ class ActivityApplicationTests {
 
 
 
+    /**
+     * 已办任务查询(分页批量)，流程实例按IN列表分批查询，不逐个实例查询
+     */
+    @Test
+    public void testFindPersonalDoneTaskListBatched() {
+        long total = historyProjectionService.streamDoneTasks("jack", 200, page -> {
+            for (DoneTask task : page) {
+                System.out.println("流程的业务key：" + task.getBusinessKey());
+                System.out.println("流程实例id：" + task.getProcessInstanceId());
+                System.out.println("流程开始时间：" + task.getProcessStartTime());
+                System.out.println("流程结束时间：" + task.getProcessEndTime());
+            }
+        });
+        log.info("已办任务总数：{}", total);
+    }
+
     /**
      * 查看组任务成员列表
      */
@@ -285,4 +407,86 @@ class ActivityApplicationTests {
         }
     }
 
+    /**
+     * 审批时间线查询，批注按流程实例一次查出，不再逐个任务查询批注；每个任务取最新的批注，与逐个任务查询的结果相同
+     */
+    @Test
+    public void findTimeline(){
+        List<TimelineEntry> timeline = auditTimelineService.findTaskTimeline("4779ec00-92f8-11ec-87e1-4eebbd9ecca7");
+        for (TimelineEntry entry : timeline) {
+            List<Comment> comments = taskService.getTaskComments(entry.getTaskId());
+            assertEquals(comments.isEmpty() ? null : comments.get(0).getFullMessage(), entry.getComment());
+            System.out.println("===================-===============");
+            System.out.println(entry.getTaskId());
+            System.out.println(entry.getComment());
+            System.out.println(entry.getStartTime());
+            System.out.println(entry.getEndTime());
+            System.out.println(entry.getAssignee());
+            System.out.println(entry.getActivityName());
+            System.out.println("===================-===============");
+        }
+    }
+
+    /**
+     * 历史节点导出(gzip压缩的csv)，中断后再次执行会从断点继续
+     */
+    @Test
+    public void exportHistory(){
+        List<HistoryExportResult> results = historyExportService.export(Arrays.asList("demo", "demo0", "demo1"),
+                Paths.get("target", "history-export"));
+        for (HistoryExportResult result : results) {
+            log.info("{}：本次导出{}行，共{}行，文件{}", result.getProcessDefinitionKey(), result.getExportedRows(),
+                    result.getTotalRows(), result.getFile());
+        }
+    }
+
+    /**
+     * 按业务key查询历史(热数据+归档)，归档会删除共享库中的历史，见HistoryArchiverTests(H2)
+     */
+    @Test
+    public void findArchivedHistory(){
+        log.info("已归档{}个流程实例", historyArchiver.size());
+        List<ArchivedProcessInstance> instances = historyQueryService.findByBusinessKey("demo:1");
+        for (ArchivedProcessInstance instance : instances) {
+            System.out.println("===================-===============");
+            System.out.println(instance.getProcessInstanceId());
+            System.out.println(instance.isArchived());
+            System.out.println(instance.getStartTime());
+            System.out.println(instance.getEndTime());
+            System.out.println(instance.getTasks().size());
+            System.out.println("===================-===============");
+        }
+    }
+
+    /**
+     * 按业务key批量查询当前步骤和办理人
+     */
+    @Test
+    public void findByBusinessKey(){
+        Map<String, ProcessPosition> positions = businessKeyIndex.findAll(Arrays.asList("demo:1", "demo:2"));
+        for (ProcessPosition position : positions.values()) {
+            for (ProcessPosition.CurrentTask task : position.getTasks()) {
+                System.out.println("===================-===============");
+                System.out.println(position.getBusinessKey());
+                System.out.println(position.getProcessInstanceId());
+                System.out.println(task.getTaskName());
+                System.out.println(task.getAssignee());
+                System.out.println("===================-===============");
+            }
+        }
+    }
+
+    /**
+     * 两个分片分别拾取demo1经理审批的候选组任务
+     */
+    @Test
+    public void claimNext(){
+        ClaimResult rose = claimCoordinator.claimNext("rose", "demo1", 0, 2);
+        ClaimResult tom = claimCoordinator.claimNext("tom", "demo1", 1, 2);
+        System.out.println("===================-===============");
+        System.out.println(rose);
+        System.out.println(tom);
+        System.out.println("===================-===============");
+    }
+
 }
@@ -0,0 +1,70 @@
+package com.example.activity.benchmark;
+
+import com.example.activity.variable.CandidateList;
+import org.activiti.engine.HistoryService;
+import org.activiti.engine.RepositoryService;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.TaskService;
+import org.activiti.engine.task.Task;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 审批流程基准测试共用的引擎状态，子类加上@State和流程key参数(JMH要求@Param在@State类中声明)
+ */
+public abstract class ApprovalEngineState {
+
+    ConfigurableApplicationContext context;
+
+    RepositoryService repositoryService;
+
+    RuntimeService runtimeService;
+
+    TaskService taskService;
+
+    HistoryService historyService;
+
+    @Setup
+    public void setup() {
+        context = H2Engine.start();
+        repositoryService = context.getBean(RepositoryService.class);
+        runtimeService = context.getBean(RuntimeService.class);
+        taskService = context.getBean(TaskService.class);
+        historyService = context.getBean(HistoryService.class);
+        started();
+    }
+
+    abstract String processKey();
+
+    /**
+     * 引擎启动后由子类获取其他Bean
+     */
+    protected void started() {
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    Map<String, Object> variables() {
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("applyUser", "jack");
+        variables.put("candidateUsers", CandidateList.of("rose", "tom", "jack"));
+        return variables;
+    }
+
+    /**
+     * 启动流程并完成员工申请，返回经理审批任务
+     */
+    Task startToApproval() {
+        String processInstanceId = runtimeService.startProcessInstanceByKey(processKey(), variables()).getId();
+        Task applyTask = taskService.createTaskQuery().processInstanceId(processInstanceId).singleResult();
+        taskService.complete(applyTask.getId());
+        return taskService.createTaskQuery().processInstanceId(processInstanceId).singleResult();
+    }
+}
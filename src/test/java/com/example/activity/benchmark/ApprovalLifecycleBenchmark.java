@@ -0,0 +1,118 @@
+package com.example.activity.benchmark;
+
+import com.example.activity.util.SecurityUtil;
+import org.activiti.api.process.model.builders.ProcessPayloadBuilder;
+import org.activiti.api.process.runtime.ProcessRuntime;
+import org.activiti.api.task.model.builders.TaskPayloadBuilder;
+import org.activiti.api.task.runtime.TaskRuntime;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 审批流程各阶段的吞吐量和延迟分布(含p99)：启动 -> 拾取 -> 完成
+ * api=engine使用RuntimeService/TaskService，api=runtime使用activity7的ProcessRuntime/TaskRuntime；
+ * 部署和历史查询与api无关，见DeployHistoryBenchmark
+ * mvn -Pbenchmark test-compile exec:java -Dexec.args="ApprovalLifecycleBenchmark"
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ApprovalLifecycleBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Engine extends ApprovalEngineState {
+
+        @Param({"demo", "demo0", "demo1"})
+        String processKey;
+
+        @Param({"engine", "runtime"})
+        String api;
+
+        ProcessRuntime processRuntime;
+
+        TaskRuntime taskRuntime;
+
+        SecurityUtil securityUtil;
+
+        @Override
+        protected void started() {
+            processRuntime = context.getBean(ProcessRuntime.class);
+            taskRuntime = context.getBean(TaskRuntime.class);
+            securityUtil = context.getBean(SecurityUtil.class);
+        }
+
+        @Override
+        String processKey() {
+            return processKey;
+        }
+
+        boolean runtimeApi() {
+            return "runtime".equals(api);
+        }
+    }
+
+    /**
+     * 每次调用前准备一个待拾取的经理审批任务
+     */
+    @State(Scope.Thread)
+    public static class PendingApproval {
+
+        String taskId;
+
+        @Setup(Level.Invocation)
+        public void prepare(Engine engine) {
+            taskId = engine.startToApproval().getId();
+        }
+    }
+
+    /**
+     * 每次调用前准备一个已由rose拾取的经理审批任务
+     */
+    @State(Scope.Thread)
+    public static class ClaimedApproval {
+
+        String taskId;
+
+        @Setup(Level.Invocation)
+        public void prepare(Engine engine) {
+            taskId = engine.startToApproval().getId();
+            engine.taskService.claim(taskId, "rose");
+        }
+    }
+
+    @Benchmark
+    public Object start(Engine engine) throws Exception {
+        if (engine.runtimeApi()) {
+            return engine.securityUtil.runAs("jack", () -> engine.processRuntime.start(ProcessPayloadBuilder.start()
+                    .withProcessDefinitionKey(engine.processKey)
+                    .withVariables(engine.variables())
+                    .build()));
+        }
+        return engine.runtimeService.startProcessInstanceByKey(engine.processKey, engine.variables());
+    }
+
+    @Benchmark
+    public Object claim(Engine engine, PendingApproval pending) throws Exception {
+        if (engine.runtimeApi()) {
+            return engine.securityUtil.runAs("rose", () -> engine.taskRuntime.claim(TaskPayloadBuilder.claim()
+                    .withTaskId(pending.taskId)
+                    .build()));
+        }
+        engine.taskService.claim(pending.taskId, "rose");
+        return pending.taskId;
+    }
+
+    @Benchmark
+    public Object complete(Engine engine, ClaimedApproval claimed) throws Exception {
+        if (engine.runtimeApi()) {
+            return engine.securityUtil.runAs("rose", () -> engine.taskRuntime.complete(TaskPayloadBuilder.complete()
+                    .withTaskId(claimed.taskId)
+                    .build()));
+        }
+        engine.taskService.complete(claimed.taskId);
+        return claimed.taskId;
+    }
+}
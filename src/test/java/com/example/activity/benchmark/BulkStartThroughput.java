@@ -0,0 +1,34 @@
+package com.example.activity.benchmark;
+
+import com.example.activity.dto.BulkStartReport;
+import com.example.activity.dto.StartRecord;
+import com.example.activity.service.BulkProcessStarter;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Collections;
+import java.util.stream.IntStream;
+
+/**
+ * 批量启动demo0的吞吐量(H2内存数据库)，按不同的批大小和线程数各跑一轮
+ * mvn -Pbenchmark test-compile exec:java -Dbenchmark.mainClass=com.example.activity.benchmark.BulkStartThroughput
+ */
+public class BulkStartThroughput {
+
+    private static final int INSTANCES = 10000;
+
+    public static void main(String[] args) {
+        int[][] settings = {{1, 1}, {50, 1}, {50, 4}, {200, 8}};
+        for (int[] setting : settings) {
+            try (ConfigurableApplicationContext context = H2Engine.start(
+                    "demo.bulk-start.batch-size=" + setting[0],
+                    "demo.bulk-start.threads=" + setting[1])) {
+                BulkStartReport report = context.getBean(BulkProcessStarter.class).start("demo0",
+                        IntStream.range(0, INSTANCES).mapToObj(i ->
+                                new StartRecord("demo:" + i, Collections.singletonMap("applyUser", "jack"))));
+                System.out.printf("batchSize=%d threads=%d started=%d failed=%d elapsed=%dms %.1f instances/s%n",
+                        setting[0], setting[1], report.getStarted(), report.getFailures().size(),
+                        report.getElapsedMillis(), report.getInstancesPerSecond());
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.activity.benchmark;
+
+import com.example.activity.variable.CandidateList;
+import org.activiti.engine.RuntimeService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 启动流程这一次提交的延迟分布：一次提交写入流程实例、执行、任务、变量、身份关联和历史等多张表
+ * settings=default是application.yaml的实际配置(已开启多行insert)；settings=perf在此基础上使用application-perf.yaml的连接池配置
+ * (H2不支持MySQL驱动的预编译缓存参数，这部分只能在MySQL上对比)；settings=single-row-insert关闭多行insert，用于查看默认配置已带来的差别
+ * mvn -Pbenchmark test-compile exec:java -Dexec.args="CommitLatencyBenchmark"
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class CommitLatencyBenchmark {
+
+    @Param({"default", "perf", "single-row-insert"})
+    private String settings;
+
+    @Param({"demo", "demo1"})
+    private String processKey;
+
+    private ConfigurableApplicationContext context;
+
+    private RuntimeService runtimeService;
+
+    @Setup
+    public void setup() {
+        if ("perf".equals(settings)) {
+            context = H2Engine.start("spring.datasource.hikari.maximum-pool-size=30",
+                    "spring.datasource.hikari.minimum-idle=30");
+        } else if ("single-row-insert".equals(settings)) {
+            context = H2Engine.start("demo.engine.bulk-insert-enabled=false");
+        } else {
+            context = H2Engine.start();
+        }
+        runtimeService = context.getBean(RuntimeService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String startProcess() {
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("applyUser", "jack");
+        variables.put("candidateUsers", CandidateList.of("rose", "tom", "jack"));
+        return runtimeService.startProcessInstanceByKey(processKey, variables).getId();
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.activity.benchmark;
+
+import org.activiti.engine.history.HistoricActivityInstance;
+import org.activiti.engine.repository.Deployment;
+import org.activiti.engine.task.Task;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 审批流程的部署和历史查询的吞吐量和延迟分布(含p99)，两者只使用RepositoryService/HistoryService，
+ * 与ApprovalLifecycleBenchmark分开，不按api参数重复运行
+ * mvn -Pbenchmark test-compile exec:java -Dexec.args="DeployHistoryBenchmark"
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeployHistoryBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Engine extends ApprovalEngineState {
+
+        @Param({"demo", "demo0", "demo1"})
+        String processKey;
+
+        @Override
+        String processKey() {
+            return processKey;
+        }
+    }
+
+    /**
+     * 一个已结束的流程实例，用于历史查询
+     */
+    @State(Scope.Thread)
+    public static class FinishedInstance {
+
+        String processInstanceId;
+
+        @Setup
+        public void prepare(Engine engine) {
+            Task approval = engine.startToApproval();
+            engine.taskService.claim(approval.getId(), "rose");
+            engine.taskService.complete(approval.getId());
+            processInstanceId = approval.getProcessInstanceId();
+        }
+    }
+
+    @Benchmark
+    public Deployment deploy(Engine engine) {
+        return engine.repositoryService.createDeployment()
+                .addClasspathResource("process/" + engine.processKey + "_process.bpmn")
+                .name(engine.processKey)
+                .deploy();
+    }
+
+    @Benchmark
+    public List<HistoricActivityInstance> historyQuery(Engine engine, FinishedInstance finished) {
+        return engine.historyService.createHistoricActivityInstanceQuery()
+                .processInstanceId(finished.processInstanceId)
+                .orderByHistoricActivityInstanceStartTime().asc()
+                .list();
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.activity.benchmark;
+
+import com.example.activity.ActivityApplication;
+import com.example.activity.service.ProcessResourceDeployer;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Arrays;
+
+/**
+ * 基准测试用的应用上下文：H2内存数据库，等待process目录下的流程部署完成
+ */
+public final class H2Engine {
+
+    private H2Engine() {
+    }
+
+    /**
+     * @param properties key=value形式的配置，作为命令行参数传入以覆盖application.yaml中的值
+     */
+    public static ConfigurableApplicationContext start(String... properties) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(ActivityApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("h2")
+                .run(Arrays.stream(properties).map(property -> "--" + property).toArray(String[]::new));
+        context.getBean(ProcessResourceDeployer.class).getDeployment().join();
+        return context;
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.activity.benchmark;
+
+import com.example.activity.identity.ObservableUserDetailsManager;
+import com.example.activity.util.SecurityUtil;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SecurityUtil.logInAs吞吐量：legacy为改造前每次加载用户并新建Authentication的写法，cached为缓存后的写法
+ * 两者都不输出日志，只比较登录本身的开销
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SecurityUtilBenchmark {
+
+    private static final String[] USERS = {"jack", "rose", "tom"};
+
+    private ObservableUserDetailsManager userDetailsManager;
+
+    private SecurityUtil securityUtil;
+
+    private int next;
+
+    @Setup
+    public void setup() {
+        userDetailsManager = new ObservableUserDetailsManager();
+        for (String user : USERS) {
+            userDetailsManager.createUser(new User(user, "{noop}password",
+                    AuthorityUtils.createAuthorityList("ROLE_ACTIVITI_USER", "GROUP_activitiTeam")));
+        }
+        securityUtil = new SecurityUtil();
+        ReflectionTestUtils.setField(securityUtil, "userDetailsService", userDetailsManager);
+        securityUtil.init();
+    }
+
+    @TearDown
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Benchmark
+    public void legacy() {
+        String username = nextUser();
+        UserDetails user = userDetailsManager.loadUserByUsername(username);
+        SecurityContextHolder.setContext(new SecurityContextImpl(new Authentication() {
+            @Override
+            public Collection<? extends GrantedAuthority> getAuthorities() {
+                return user.getAuthorities();
+            }
+            @Override
+            public Object getCredentials() {
+                return user.getPassword();
+            }
+            @Override
+            public Object getDetails() {
+                return user;
+            }
+            @Override
+            public Object getPrincipal() {
+                return user;
+            }
+            @Override
+            public boolean isAuthenticated() {
+                return true;
+            }
+            @Override
+            public void setAuthenticated(boolean isAuthenticated) throws IllegalArgumentException { }
+            @Override
+            public String getName() {
+                return user.getUsername();
+            }
+        }));
+        org.activiti.engine.impl.identity.Authentication.setAuthenticatedUserId(username);
+    }
+
+    @Benchmark
+    public void cached() {
+        securityUtil.logInAs(nextUser());
+    }
+
+    private String nextUser() {
+        next = (next + 1) % USERS.length;
+        return USERS[next];
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.activity.benchmark;
+
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.TaskService;
+import org.activiti.engine.runtime.ProcessInstance;
+import org.activiti.engine.task.Task;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 经理审批任务的创建吞吐量：完成员工申请后创建经理审批任务并写入候选人
+ * demo通过MyTaskListener按规则表添加3个候选人，demo1直接配置候选组activitiTeam
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TaskCreateBenchmark {
+
+    @Param({"demo", "demo1"})
+    private String processKey;
+
+    private ConfigurableApplicationContext context;
+
+    private RuntimeService runtimeService;
+
+    private TaskService taskService;
+
+    @Setup
+    public void setup() {
+        context = H2Engine.start();
+        runtimeService = context.getBean(RuntimeService.class);
+        taskService = context.getBean(TaskService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Task createApprovalTask() {
+        ProcessInstance processInstance = runtimeService.startProcessInstanceByKey(processKey);
+        Task applyTask = taskService.createTaskQuery().processInstanceId(processInstance.getId()).singleResult();
+        taskService.complete(applyTask.getId());
+        return taskService.createTaskQuery().processInstanceId(processInstance.getId()).singleResult();
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.activity.history;
+
+import com.example.activity.benchmark.H2Engine;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.TaskService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 异步历史写入：同一个流程在引擎默认的历史写入和异步写入下得到相同的ACT_HI_*行(ID和时间只比较是否为空)
+ */
+class AsyncHistoryManagerTests {
+
+    private static final String[] TABLES = {"ACT_HI_PROCINST", "ACT_HI_ACTINST", "ACT_HI_TASKINST", "ACT_HI_IDENTITYLINK",
+            "ACT_HI_DETAIL"};
+
+    /**
+     * 值不固定的列，只比较是否为空
+     */
+    private static final Set<String> GENERATED = new HashSet<>(Arrays.asList("ID_", "PROC_INST_ID_", "PROC_DEF_ID_",
+            "EXECUTION_ID_", "TASK_ID_", "ACT_INST_ID_", "START_TIME_", "END_TIME_", "CLAIM_TIME_", "DURATION_", "TIME_"));
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void writesSameRowsAsEngineAfterCommit() throws Exception {
+        Map<String, List<String>> expected;
+        ConfigurableApplicationContext context = H2Engine.start();
+        try {
+            expected = history(context, runDemo1(context, "async-history:engine"));
+        } finally {
+            context.close();
+        }
+        assertEquals(4, expected.get("ACT_HI_ACTINST").size());
+        assertEquals(2, expected.get("ACT_HI_TASKINST").size());
+
+        context = H2Engine.start("demo.history.async.enabled=true", "demo.history.async.flush-interval-millis=50",
+                "demo.history.async.durability=wal", "demo.history.async.wal-path=" + dir.resolve("history-wal.log"));
+        try {
+            String processInstanceId = runDemo1(context, "async-history:async");
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            Map<String, List<String>> actual = history(context, processInstanceId);
+            while (!expected.equals(actual) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+                actual = history(context, processInstanceId);
+            }
+            assertEquals(expected, actual);
+            assertEquals(0, context.getBean(AsyncHistoryWriter.class).getQueueDepth());
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * 员工申请时设置变量，经理审批由rose拾取后完成
+     */
+    private static String runDemo1(ConfigurableApplicationContext context, String businessKey) {
+        RuntimeService runtimeService = context.getBean(RuntimeService.class);
+        TaskService taskService = context.getBean(TaskService.class);
+        String processInstanceId = runtimeService.startProcessInstanceByKey("demo1", businessKey,
+                Collections.singletonMap("amount", 5000L)).getId();
+        String applyTaskId = taskService.createTaskQuery().processInstanceId(processInstanceId).singleResult().getId();
+        taskService.complete(applyTaskId, Collections.singletonMap("reason", "出差"));
+        String approveTaskId = taskService.createTaskQuery().processInstanceId(processInstanceId).singleResult().getId();
+        taskService.claim(approveTaskId, "rose");
+        taskService.complete(approveTaskId);
+        return processInstanceId;
+    }
+
+    private static Map<String, List<String>> history(ConfigurableApplicationContext context, String processInstanceId) {
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        Map<String, List<String>> history = new TreeMap<>();
+        for (String table : TABLES) {
+            String where = "ACT_HI_IDENTITYLINK".equals(table)
+                    ? "PROC_INST_ID_ = ? or TASK_ID_ in (select ID_ from ACT_HI_TASKINST where PROC_INST_ID_ = ?)"
+                    : "PROC_INST_ID_ = ? or PROC_INST_ID_ = ?";
+            List<String> rows = new ArrayList<>();
+            for (Map<String, Object> row : jdbcTemplate.queryForList("select * from " + table + " where " + where,
+                    processInstanceId, processInstanceId)) {
+                StringBuilder normalized = new StringBuilder();
+                new TreeMap<>(row).forEach((column, value) -> normalized.append(column).append('=')
+                        .append(column.equals("BUSINESS_KEY_") || GENERATED.contains(column) ? value != null : value).append(' '));
+                rows.add(normalized.toString());
+            }
+            Collections.sort(rows);
+            history.put(table, rows);
+        }
+        return history;
+    }
+}
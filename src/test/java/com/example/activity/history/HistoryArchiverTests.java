@@ -0,0 +1,133 @@
+package com.example.activity.history;
+
+import com.example.activity.benchmark.H2Engine;
+import com.example.activity.config.HistoryArchiveProperties;
+import com.example.activity.dto.ArchivedProcessInstance;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.activiti.engine.HistoryService;
+import org.activiti.engine.ManagementService;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.TaskService;
+import org.activiti.engine.task.Task;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 历史归档：在H2上归档并删除历史，按原类型还原变量，只允许一个归档方，未归档时查询不创建归档目录
+ */
+class HistoryArchiverTests {
+
+    @TempDir
+    static Path dir;
+
+    private static ConfigurableApplicationContext context;
+
+    private static HistoryArchiver archiver;
+
+    @BeforeAll
+    static void start() {
+        context = H2Engine.start("demo.history-archive.dir=" + dir.resolve("archive"),
+                "demo.history-archive.min-age-days=0", "demo.history-archive.node-id=test");
+        archiver = context.getBean(HistoryArchiver.class);
+    }
+
+    @AfterAll
+    static void stop() {
+        context.close();
+    }
+
+    @Test
+    void archivesFinishedInstanceWithTypedVariables() throws Exception {
+        ObjectNode form = new ObjectMapper().createObjectNode().put("reason", "出差").put("days", 3);
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("amount", 5000L);
+        variables.put("note", "报销");
+        variables.put("approvers", new ArrayList<>(Arrays.asList("rose", "tom")));
+        variables.put("attachment", new byte[]{1, 2, 3});
+        variables.put("form", form);
+        String processInstanceId = finishDemo1("archive:1", variables);
+        Thread.sleep(10);
+
+        assertTrue(archiver.archive() >= 1);
+        HistoryService historyService = context.getBean(HistoryService.class);
+        assertNull(historyService.createHistoricProcessInstanceQuery().processInstanceId(processInstanceId).singleResult());
+
+        ArchivedProcessInstance instance = archiver.find(processInstanceId).orElseThrow(AssertionError::new);
+        assertTrue(instance.isArchived());
+        assertEquals("archive:1", instance.getBusinessKey());
+        assertEquals(2, instance.getTasks().size());
+        assertEquals(1, archiver.findByBusinessKey("archive:1").size());
+
+        Map<String, Object> restored = new HashMap<>();
+        for (ArchivedProcessInstance.Variable variable : instance.getVariables()) {
+            restored.put(variable.getName(), archiver.variableValue(variable));
+        }
+        assertEquals(5000L, restored.get("amount"));
+        assertEquals("报销", restored.get("note"));
+        assertEquals(Arrays.asList("rose", "tom"), restored.get("approvers"));
+        assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) restored.get("attachment"));
+        assertEquals(form, restored.get("form"));
+    }
+
+    @Test
+    void rejectsSecondArchiver() {
+        HistoryArchiveProperties properties = new HistoryArchiveProperties();
+        properties.setDir(dir.resolve("other").toString());
+        properties.setNodeId("other");
+        HistoryArchiver other = new HistoryArchiver();
+        ReflectionTestUtils.setField(other, "historyService", context.getBean(HistoryService.class));
+        ReflectionTestUtils.setField(other, "taskService", context.getBean(TaskService.class));
+        ReflectionTestUtils.setField(other, "managementService", context.getBean(ManagementService.class));
+        ReflectionTestUtils.setField(other, "jdbcTemplate", context.getBean(JdbcTemplate.class));
+        ReflectionTestUtils.setField(other, "properties", properties);
+        other.init();
+        try {
+            // 先让本节点成为归档方
+            archiver.archive();
+            assertThrows(IllegalStateException.class, other::archive);
+        } finally {
+            other.destroy();
+        }
+    }
+
+    @Test
+    void disabledArchiverDoesNotCreateDirectory() {
+        HistoryArchiveProperties properties = new HistoryArchiveProperties();
+        properties.setDir(dir.resolve("disabled").toString());
+        properties.setNodeId("disabled");
+        HistoryArchiver disabled = new HistoryArchiver();
+        ReflectionTestUtils.setField(disabled, "properties", properties);
+        disabled.init();
+        try {
+            assertFalse(disabled.find("unknown").isPresent());
+            assertTrue(disabled.findByBusinessKey("unknown").isEmpty());
+            assertEquals(0, disabled.size());
+            assertFalse(Files.exists(dir.resolve("disabled")));
+        } finally {
+            disabled.destroy();
+        }
+    }
+
+    private static String finishDemo1(String businessKey, Map<String, Object> variables) {
+        RuntimeService runtimeService = context.getBean(RuntimeService.class);
+        TaskService taskService = context.getBean(TaskService.class);
+        String processInstanceId = runtimeService.startProcessInstanceByKey("demo1", businessKey, variables).getId();
+        Task task;
+        while ((task = taskService.createTaskQuery().processInstanceId(processInstanceId).singleResult()) != null) {
+            taskService.complete(task.getId());
+        }
+        return processInstanceId;
+    }
+}
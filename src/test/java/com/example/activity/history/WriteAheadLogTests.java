@@ -0,0 +1,50 @@
+package com.example.activity.history;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 预写日志：追加的变化按原类型读回，写入一半的行跳过，截断后清空
+ */
+class WriteAheadLogTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsBackAppendedChangesWithTypes() throws Exception {
+        Path path = dir.resolve("history-wal.log");
+        HistoryRowChange insert = new HistoryRowChange(HistoryRowChange.Kind.INSERT, "ACT_HI_TASKINST", "t1")
+                .value("ID_", "t1").value("NAME_", "经理审批\t1").value("PRIORITY_", 50)
+                .value("START_TIME_", new Date(1000L)).value("DURATION_", null);
+        HistoryRowChange end = new HistoryRowChange(HistoryRowChange.Kind.END, Arrays.asList("e1", "e0"), "_4")
+                .value("END_TIME_", new Date(2000L)).value("DELETE_REASON_", null);
+        try (WriteAheadLog writeAheadLog = new WriteAheadLog(path)) {
+            writeAheadLog.append(Arrays.asList(insert, end));
+        }
+        // 进程在追加时退出留下的半行
+        Files.write(path, "{\"kind\":\"UPD".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (WriteAheadLog reopened = new WriteAheadLog(path)) {
+            List<HistoryRowChange> changes = reopened.readAll();
+            assertEquals(Arrays.asList(insert, end), changes);
+            assertEquals(Integer.class, changes.get(0).getValues().get("PRIORITY_").getClass());
+            assertEquals(Date.class, changes.get(0).getValues().get("START_TIME_").getClass());
+
+            reopened.truncate();
+            assertTrue(reopened.readAll().isEmpty());
+            reopened.append(Arrays.asList(end));
+            assertEquals(Arrays.asList(end), reopened.readAll());
+        }
+    }
+}
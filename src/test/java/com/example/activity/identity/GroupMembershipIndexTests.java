@@ -0,0 +1,86 @@
+package com.example.activity.identity;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 组成员索引：全量构建和用户变更后的增量更新
+ */
+@Slf4j
+class GroupMembershipIndexTests {
+
+    @Test
+    void resolvesGroupsForLargeDirectory() {
+        ObservableUserDetailsManager manager = new ObservableUserDetailsManager();
+        for (int i = 0; i < 50000; i++) {
+            manager.createUser(new User("user" + i, "{noop}password",
+                    AuthorityUtils.createAuthorityList("ROLE_ACTIVITI_USER", "GROUP_team" + (i % 100))));
+        }
+        GroupMembershipIndex index = index(manager);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 100000; i++) {
+            index.isMember("user" + (i % 50000), "team" + (i % 100));
+        }
+        log.info("10万次组成员判断耗时：{}ms", (System.nanoTime() - start) / 1000000);
+
+        assertEquals(500, index.groupSize("team7"));
+        assertTrue(index.isMember("user107", "team7"));
+        assertFalse(index.isMember("user108", "team7"));
+        assertEquals(Arrays.asList("team42"), index.findGroups("user42"));
+    }
+
+    @Test
+    void followsUserChanges() {
+        ObservableUserDetailsManager manager = new ObservableUserDetailsManager();
+        manager.createUser(new User("rose", "{noop}password",
+                AuthorityUtils.createAuthorityList("ROLE_ACTIVITI_USER", "GROUP_activitiTeam")));
+        GroupMembershipIndex index = index(manager);
+
+        manager.createUser(new User("tom", "{noop}password",
+                AuthorityUtils.createAuthorityList("ROLE_ACTIVITI_USER", "GROUP_activitiTeam")));
+        assertEquals(Arrays.asList("rose", "tom"), index.findUsers("activitiTeam"));
+
+        manager.updateUser(new User("rose", "{noop}password",
+                AuthorityUtils.createAuthorityList("ROLE_ACTIVITI_USER", "GROUP_managers")));
+        assertEquals(Arrays.asList("tom"), index.findUsers("activitiTeam"));
+        assertTrue(index.isMember("rose", "managers"));
+
+        manager.deleteUser("tom");
+        assertEquals(0, index.groupSize("activitiTeam"));
+        assertTrue(index.findGroups("tom").isEmpty());
+        assertEquals(Arrays.asList("rose"), index.getUsers());
+        assertFalse(index.isMember("tom", "activitiTeam"));
+
+        manager.createUser(new User("tom", "{noop}password",
+                AuthorityUtils.createAuthorityList("ROLE_ACTIVITI_USER", "GROUP_managers")));
+        assertEquals(Arrays.asList("rose", "tom"), index.findUsers("managers"));
+    }
+
+    @Test
+    void servesEngineUserGroupManager() {
+        ObservableUserDetailsManager manager = new ObservableUserDetailsManager();
+        manager.createUser(new User("rose", "{noop}password",
+                AuthorityUtils.createAuthorityList("ROLE_ACTIVITI_USER", "GROUP_activitiTeam", "GROUP_managers")));
+        GroupMembershipIndex index = index(manager);
+
+        assertEquals(Arrays.asList("activitiTeam", "managers"), index.getUserGroups("rose"));
+        assertEquals(Arrays.asList("ACTIVITI_USER"), index.getUserRoles("rose"));
+        assertEquals(Arrays.asList("activitiTeam", "managers"), index.getGroups());
+        assertTrue(index.getUserGroups("nobody").isEmpty());
+    }
+
+    private static GroupMembershipIndex index(ObservableUserDetailsManager manager) {
+        GroupMembershipIndex index = new GroupMembershipIndex();
+        ReflectionTestUtils.setField(index, "userDetailsService", manager);
+        index.init();
+        return index;
+    }
+}
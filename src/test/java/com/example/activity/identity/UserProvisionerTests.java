@@ -0,0 +1,65 @@
+package com.example.activity.identity;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 用户加载耗时：明文密码串行/并行加密，以及已加密密码直接加载
+ */
+@Slf4j
+class UserProvisionerTests {
+
+    private final PasswordEncoder passwordEncoder = PasswordEncoderFactories.createDelegatingPasswordEncoder();
+
+    @Test
+    void plainPasswordsHashedInParallel() {
+        Resource users = users(64, "password");
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        long start = System.currentTimeMillis();
+        new UserProvisioner(passwordEncoder, 1).load(users);
+        long serial = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        List<UserDetails> loaded = new UserProvisioner(passwordEncoder, threads).load(users);
+        long parallel = System.currentTimeMillis() - start;
+
+        log.info("加载64个明文密码用户：单线程{}ms，{}线程{}ms", serial, threads, parallel);
+        assertEquals(64, loaded.size());
+        assertTrue(passwordEncoder.matches("password", loaded.get(0).getPassword()));
+    }
+
+    @Test
+    void preHashedPasswordsSkipHashing() {
+        String hashed = passwordEncoder.encode("password");
+        Resource users = users(5000, hashed);
+
+        long start = System.currentTimeMillis();
+        List<UserDetails> loaded = new UserProvisioner(passwordEncoder, 1).load(users);
+        log.info("加载5000个已加密密码用户：{}ms", System.currentTimeMillis() - start);
+
+        assertEquals(5000, loaded.size());
+        assertEquals(hashed, loaded.get(4999).getPassword());
+        assertTrue(loaded.get(0).getAuthorities().stream().anyMatch(a -> a.getAuthority().equals("GROUP_activitiTeam")));
+    }
+
+    private static Resource users(int count, String password) {
+        StringBuilder content = new StringBuilder("# 用户名,密码,角色和组...\n");
+        for (int i = 0; i < count; i++) {
+            content.append("user").append(i).append(',').append(password)
+                    .append(",ROLE_ACTIVITI_USER,GROUP_activitiTeam\n");
+        }
+        return new ByteArrayResource(content.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
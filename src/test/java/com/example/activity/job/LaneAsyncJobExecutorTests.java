@@ -0,0 +1,135 @@
+package com.example.activity.job;
+
+import com.example.activity.benchmark.H2Engine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.activiti.engine.RepositoryService;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.activiti.engine.delegate.JavaDelegate;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分队列的异步任务执行器：按流程key分到队列，队列满时解除锁定并由本队列重新获取，按队列记录指标
+ * 两个流程key只差一个字符，未转义的like条件会把laneXtest的任务当作lane_test的任务
+ */
+class LaneAsyncJobExecutorTests {
+
+    private static final int INSTANCES = 3;
+
+    private static ConfigurableApplicationContext context;
+
+    @BeforeAll
+    static void start() {
+        context = H2Engine.start("spring.activiti.async-executor-activate=true",
+                "demo.async-executor.acquire-wait-time-millis=200",
+                "demo.async-executor.queue-full-wait-time-millis=100",
+                "demo.async-executor.default-lane.threads=1",
+                "demo.async-executor.default-lane.queue-size=1",
+                "demo.async-executor.lanes.fast.process-keys=lane_test",
+                "demo.async-executor.lanes.fast.threads=1",
+                "demo.async-executor.lanes.fast.queue-size=1");
+        RepositoryService repositoryService = context.getBean(RepositoryService.class);
+        repositoryService.createDeployment().name("lane-test")
+                .addString("lane_test.bpmn", asyncProcess("lane_test"))
+                .addString("laneXtest.bpmn", asyncProcess("laneXtest"))
+                .deploy();
+    }
+
+    @AfterAll
+    static void stop() {
+        RecordingDelegate.release.countDown();
+        context.close();
+    }
+
+    @Test
+    void routesJobsToLanesAndReacquiresRejectedJobs() throws Exception {
+        RuntimeService runtimeService = context.getBean(RuntimeService.class);
+        List<String> fast = new ArrayList<>();
+        List<String> other = new ArrayList<>();
+        for (int i = 0; i < INSTANCES; i++) {
+            fast.add(runtimeService.startProcessInstanceByKey("lane_test").getId());
+            other.add(runtimeService.startProcessInstanceByKey("laneXtest").getId());
+        }
+        // 每个队列一个线程执行中、一个在队列中，第三个被拒绝并解除锁定
+        MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+        assertTrue(count(meterRegistry, "demo.engine.job.rejected", "fast") >= 1);
+        assertTrue(count(meterRegistry, "demo.engine.job.rejected", "default") >= 1);
+
+        RecordingDelegate.release.countDown();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (RecordingDelegate.threads.size() < 2 * INSTANCES && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        for (String processInstanceId : fast) {
+            assertTrue(RecordingDelegate.threads.get(processInstanceId).startsWith("activiti-job-fast-"),
+                    RecordingDelegate.threads.toString());
+        }
+        for (String processInstanceId : other) {
+            assertTrue(RecordingDelegate.threads.get(processInstanceId).startsWith("activiti-job-default-"),
+                    RecordingDelegate.threads.toString());
+        }
+        // 被拒绝的任务由各自队列的获取线程重新获取
+        assertTrue(count(meterRegistry, "demo.engine.job.acquired", "fast") >= 1);
+        assertTrue(count(meterRegistry, "demo.engine.job.acquired", "default") >= 1);
+        assertNotNull(meterRegistry.find("demo.engine.job.queue.wait").tag("lane", "fast").timer());
+    }
+
+    @Test
+    void escapesProcessKeyInPattern() {
+        assertEquals("lane!_test:%", LaneAsyncJobExecutor.processDefinitionIdPattern("lane_test"));
+        assertEquals("a!%b!!c:%", LaneAsyncJobExecutor.processDefinitionIdPattern("a%b!c"));
+    }
+
+    private static double count(MeterRegistry meterRegistry, String name, String lane) {
+        Counter counter = meterRegistry.find(name).tag("lane", lane).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private static String asyncProcess(String processKey) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<definitions xmlns=\"http://www.omg.org/spec/BPMN/20100524/MODEL\""
+                + " xmlns:activiti=\"http://activiti.org/bpmn\" targetNamespace=\"test\">\n"
+                + "  <process id=\"" + processKey + "\" isExecutable=\"true\">\n"
+                + "    <startEvent id=\"start\"/>\n"
+                + "    <sequenceFlow id=\"toWork\" sourceRef=\"start\" targetRef=\"work\"/>\n"
+                + "    <serviceTask id=\"work\" activiti:async=\"true\" activiti:class=\"" + RecordingDelegate.class.getName() + "\"/>\n"
+                + "    <sequenceFlow id=\"toEnd\" sourceRef=\"work\" targetRef=\"end\"/>\n"
+                + "    <endEvent id=\"end\"/>\n"
+                + "  </process>\n"
+                + "</definitions>";
+    }
+
+    /**
+     * 等待放行后记录执行任务的线程
+     */
+    public static class RecordingDelegate implements JavaDelegate {
+
+        static final CountDownLatch release = new CountDownLatch(1);
+
+        static final Map<String, String> threads = new ConcurrentHashMap<>();
+
+        @Override
+        public void execute(DelegateExecution execution) {
+            try {
+                release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            threads.put(execution.getProcessInstanceId(), Thread.currentThread().getName());
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.activity.loadgen;
+
+import com.example.activity.benchmark.H2Engine;
+import com.example.activity.identity.ObservableUserDetailsManager;
+import com.example.activity.service.TaskInboxService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.activiti.engine.HistoryService;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.TaskService;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 审批流量压测：在H2内存数据库上模拟多个用户并发发起、拾取、办理流程和查看历史，输出json报告
+ * 用户为users.csv中的jack/rose/tom加上合成用户user001...，合成用户属于activitiTeam组
+ * mvn -Ploadgen test-compile exec:java -Dexec.args="users=50 durationSeconds=60 meanThinkTimeMillis=200"
+ */
+@Slf4j
+public class LoadGenerator {
+
+    private static final List<String> OPERATIONS = Arrays.asList("start", "inbox", "claim", "complete", "history");
+
+    /**
+     * 压测参数，命令行以 名称=值 的形式传入
+     */
+    @Data
+    public static class Settings {
+
+        private int users = 20;
+
+        private int durationSeconds = 60;
+
+        private long meanThinkTimeMillis = 200;
+
+        private List<String> processKeys = Arrays.asList("demo0", "demo1");
+
+        /**
+         * 每次操作为发起流程的比例
+         */
+        private double startRatio = 0.3;
+
+        /**
+         * 每次操作为查看已办的比例，其余为查看待办并办理
+         */
+        private double historyRatio = 0.1;
+
+        private int inboxPageSize = 20;
+
+        private String output = "target/loadgen-report.json";
+
+        static Settings parse(String[] args) {
+            Settings settings = new Settings();
+            for (String arg : args) {
+                String[] pair = arg.split("=", 2);
+                String value = pair.length > 1 ? pair[1] : "";
+                switch (pair[0]) {
+                    case "users":
+                        settings.setUsers(Integer.parseInt(value));
+                        break;
+                    case "durationSeconds":
+                        settings.setDurationSeconds(Integer.parseInt(value));
+                        break;
+                    case "meanThinkTimeMillis":
+                        settings.setMeanThinkTimeMillis(Long.parseLong(value));
+                        break;
+                    case "processKeys":
+                        settings.setProcessKeys(Arrays.asList(value.split(",")));
+                        break;
+                    case "startRatio":
+                        settings.setStartRatio(Double.parseDouble(value));
+                        break;
+                    case "historyRatio":
+                        settings.setHistoryRatio(Double.parseDouble(value));
+                        break;
+                    case "inboxPageSize":
+                        settings.setInboxPageSize(Integer.parseInt(value));
+                        break;
+                    case "output":
+                        settings.setOutput(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown argument " + arg);
+                }
+            }
+            return settings;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = Settings.parse(args);
+        ConfigurableApplicationContext context = H2Engine.start();
+        try {
+            LoadReport report = new LoadGenerator().run(context, settings);
+            File output = new File(settings.getOutput());
+            if (output.getParentFile() != null) {
+                output.getParentFile().mkdirs();
+            }
+            new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(output, report);
+            log.info("> Load report written to {}", output.getAbsolutePath());
+        } finally {
+            context.close();
+        }
+    }
+
+    LoadReport run(ConfigurableApplicationContext context, Settings settings) throws InterruptedException {
+        List<String> users = createUsers(context, settings.getUsers());
+        Map<String, OperationStats> stats = new LinkedHashMap<>();
+        for (String operation : OPERATIONS) {
+            stats.put(operation, new OperationStats());
+        }
+
+        RuntimeService runtimeService = context.getBean(RuntimeService.class);
+        TaskService taskService = context.getBean(TaskService.class);
+        HistoryService historyService = context.getBean(HistoryService.class);
+        TaskInboxService taskInboxService = context.getBean(TaskInboxService.class);
+
+        Date startedAt = new Date();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(settings.getDurationSeconds());
+        ExecutorService executor = Executors.newFixedThreadPool(users.size());
+        for (String user : users) {
+            executor.execute(new VirtualUser(user, users, settings, stats, deadline,
+                    runtimeService, taskService, historyService, taskInboxService));
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(settings.getDurationSeconds() + 60L, TimeUnit.SECONDS)) {
+            // 有操作超过截止时间60秒仍未返回，中断后再等待；仍未结束时统计还在变化，不生成报告
+            log.warn("> Virtual users still running 60s after the deadline, interrupting them");
+            executor.shutdownNow();
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Virtual users did not stop, load report not written");
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000d;
+
+        LoadReport report = new LoadReport();
+        report.setStartedAt(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(startedAt));
+        report.setDurationSeconds(seconds);
+        report.setUsers(users.size());
+        report.setProcessKeys(settings.getProcessKeys());
+        report.setMeanThinkTimeMillis(settings.getMeanThinkTimeMillis());
+        long total = 0;
+        for (Map.Entry<String, OperationStats> entry : stats.entrySet()) {
+            LoadReport.Operation operation = entry.getValue().summarize(seconds);
+            report.getOperations().put(entry.getKey(), operation);
+            total += operation.getCount();
+            log.info("> {}: {} ops, {}/s, p50 {}ms, p99 {}ms, {} sql/op, {} conflicts, {} errors", entry.getKey(),
+                    operation.getCount(), String.format("%.1f", operation.getThroughputPerSecond()),
+                    String.format("%.2f", operation.getP50Millis()), String.format("%.2f", operation.getP99Millis()),
+                    String.format("%.1f", operation.getSqlStatementsPerOperation()), operation.getConflicts(),
+                    operation.getErrors());
+        }
+        report.setThroughputPerSecond(total / seconds);
+        return report;
+    }
+
+    /**
+     * users.csv中的用户加上合成用户，合成用户属于activitiTeam组，可以办理demo1的经理审批
+     */
+    private List<String> createUsers(ConfigurableApplicationContext context, int count) {
+        ObservableUserDetailsManager userDetailsManager =
+                (ObservableUserDetailsManager) context.getBean(UserDetailsService.class);
+        List<String> users = new ArrayList<>(new TreeSet<>(userDetailsManager.getUsernames()));
+        for (int i = 1; users.size() < count; i++) {
+            String username = String.format("user%03d", i);
+            if (!userDetailsManager.userExists(username)) {
+                userDetailsManager.createUser(User.withUsername(username)
+                        .password("{noop}password")
+                        .authorities("ROLE_ACTIVITI_USER", "GROUP_activitiTeam")
+                        .build());
+            }
+            users.add(username);
+        }
+        return users;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.activity.loadgen;
+
+import lombok.Data;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 压测报告，输出为json
+ */
+@Data
+public class LoadReport {
+
+    private String startedAt;
+
+    private double durationSeconds;
+
+    private int users;
+
+    private List<String> processKeys;
+
+    private long meanThinkTimeMillis;
+
+    private double throughputPerSecond;
+
+    /**
+     * 按操作统计：start、inbox、claim、complete、history
+     */
+    private Map<String, Operation> operations = new LinkedHashMap<>();
+
+    @Data
+    public static class Operation {
+
+        private long count;
+
+        private long errors;
+
+        /**
+         * 任务已被其他用户拾取、或并发更新时的乐观锁冲突
+         */
+        private long conflicts;
+
+        private double throughputPerSecond;
+
+        private double meanMillis;
+
+        private double p50Millis;
+
+        private double p90Millis;
+
+        private double p99Millis;
+
+        private double maxMillis;
+
+        /**
+         * 引擎通过MyBatis执行的SQL语句数，不含JdbcTemplate直接执行的语句
+         */
+        private long sqlStatements;
+
+        private double sqlStatementsPerOperation;
+    }
+}
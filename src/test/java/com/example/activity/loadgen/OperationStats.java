@@ -0,0 +1,64 @@
+package com.example.activity.loadgen;
+
+import java.util.Arrays;
+
+/**
+ * 一种操作的耗时样本和SQL语句数，由多个虚拟用户线程并发记录
+ */
+final class OperationStats {
+
+    private long[] latencies = new long[1024];
+
+    private int count;
+
+    private long errors;
+
+    private long conflicts;
+
+    private long statements;
+
+    synchronized void record(long nanos, long sqlStatements) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = nanos;
+        statements += sqlStatements;
+    }
+
+    synchronized void recordError() {
+        errors++;
+    }
+
+    synchronized void recordConflict() {
+        conflicts++;
+    }
+
+    synchronized LoadReport.Operation summarize(double seconds) {
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        LoadReport.Operation operation = new LoadReport.Operation();
+        operation.setCount(count);
+        operation.setErrors(errors);
+        operation.setConflicts(conflicts);
+        operation.setThroughputPerSecond(count / seconds);
+        operation.setSqlStatements(statements);
+        if (count > 0) {
+            operation.setMeanMillis(Arrays.stream(sorted).average().orElse(0) / 1_000_000d);
+            operation.setP50Millis(percentile(sorted, 0.5));
+            operation.setP90Millis(percentile(sorted, 0.9));
+            operation.setP99Millis(percentile(sorted, 0.99));
+            operation.setMaxMillis(sorted[count - 1] / 1_000_000d);
+            operation.setSqlStatementsPerOperation((double) statements / count);
+        }
+        return operation;
+    }
+
+    synchronized long count() {
+        return count;
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1_000_000d;
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.activity.loadgen;
+
+import com.example.activity.dto.InboxPage;
+import com.example.activity.dto.InboxTask;
+import com.example.activity.metrics.SqlStatementCounter;
+import com.example.activity.service.TaskInboxService;
+import com.example.activity.variable.CandidateList;
+import lombok.extern.slf4j.Slf4j;
+import org.activiti.engine.ActivitiOptimisticLockingException;
+import org.activiti.engine.ActivitiTaskAlreadyClaimedException;
+import org.activiti.engine.HistoryService;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.TaskService;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * 一个模拟用户：按比例发起流程、查看待办并拾取和办理、查看已办，每次操作之间按指数分布的思考时间等待
+ * demo0的员工申请由发起人办理，经理审批的候选人从所有用户中随机选3个；demo1的员工申请固定由jack办理，经理审批由activitiTeam组办理
+ */
+@Slf4j
+final class VirtualUser implements Runnable {
+
+    private final String userId;
+
+    private final List<String> allUsers;
+
+    private final LoadGenerator.Settings settings;
+
+    private final Map<String, OperationStats> stats;
+
+    private final long deadline;
+
+    private final RuntimeService runtimeService;
+
+    private final TaskService taskService;
+
+    private final HistoryService historyService;
+
+    private final TaskInboxService taskInboxService;
+
+    VirtualUser(String userId, List<String> allUsers, LoadGenerator.Settings settings, Map<String, OperationStats> stats,
+                long deadline, RuntimeService runtimeService, TaskService taskService, HistoryService historyService,
+                TaskInboxService taskInboxService) {
+        this.userId = userId;
+        this.allUsers = allUsers;
+        this.settings = settings;
+        this.stats = stats;
+        this.deadline = deadline;
+        this.runtimeService = runtimeService;
+        this.taskService = taskService;
+        this.historyService = historyService;
+        this.taskInboxService = taskInboxService;
+    }
+
+    @Override
+    public void run() {
+        // 错开各用户的第一次操作
+        think();
+        while (System.nanoTime() < deadline) {
+            double action = ThreadLocalRandom.current().nextDouble();
+            if (action < settings.getStartRatio()) {
+                startProcess();
+            } else if (action < settings.getStartRatio() + settings.getHistoryRatio()) {
+                readHistory();
+            } else {
+                workInbox();
+            }
+            think();
+        }
+    }
+
+    private void startProcess() {
+        List<String> processKeys = settings.getProcessKeys();
+        String processKey = processKeys.get(ThreadLocalRandom.current().nextInt(processKeys.size()));
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("applyUser", userId);
+        variables.put("candidateUsers", CandidateList.of(randomApprovers()));
+        measure("start", () -> runtimeService.startProcessInstanceByKey(processKey, "loadgen:" + UUID.randomUUID(), variables));
+    }
+
+    private void workInbox() {
+        InboxPage page = measure("inbox", () -> taskInboxService.findInbox(userId, null, null, settings.getInboxPageSize()));
+        if (page == null || page.getContent().isEmpty()) {
+            return;
+        }
+        List<InboxTask> tasks = page.getContent();
+        InboxTask task = tasks.get(ThreadLocalRandom.current().nextInt(tasks.size()));
+        if (task.getAssignee() == null) {
+            Boolean claimed = measure("claim", () -> {
+                taskService.claim(task.getTaskId(), userId);
+                return Boolean.TRUE;
+            });
+            if (claimed == null) {
+                return;
+            }
+            think();
+        }
+        measure("complete", () -> {
+            taskService.complete(task.getTaskId());
+            return Boolean.TRUE;
+        });
+    }
+
+    private void readHistory() {
+        measure("history", () -> historyService.createHistoricTaskInstanceQuery()
+                .taskAssignee(userId)
+                .finished()
+                .orderByHistoricTaskInstanceEndTime().desc()
+                .listPage(0, settings.getInboxPageSize()));
+    }
+
+    private List<String> randomApprovers() {
+        List<String> others = new ArrayList<>(allUsers);
+        others.remove(userId);
+        Collections.shuffle(others, ThreadLocalRandom.current());
+        return others.subList(0, Math.min(3, others.size()));
+    }
+
+    /**
+     * 记录一次操作的耗时和SQL语句数，失败时返回null
+     */
+    private <T> T measure(String operation, Supplier<T> action) {
+        OperationStats operationStats = stats.get(operation);
+        int statementsBefore = SqlStatementCounter.current();
+        long start = System.nanoTime();
+        try {
+            T result = action.get();
+            operationStats.record(System.nanoTime() - start, SqlStatementCounter.current() - statementsBefore);
+            return result;
+        } catch (ActivitiTaskAlreadyClaimedException | ActivitiOptimisticLockingException e) {
+            operationStats.recordConflict();
+        } catch (RuntimeException e) {
+            log.debug("> {} failed for {}", operation, userId, e);
+            operationStats.recordError();
+        }
+        return null;
+    }
+
+    private void think() {
+        long mean = settings.getMeanThinkTimeMillis();
+        if (mean <= 0) {
+            return;
+        }
+        long millis = (long) (-mean * Math.log(1 - ThreadLocalRandom.current().nextDouble()));
+        long remaining = (deadline - System.nanoTime()) / 1_000_000;
+        try {
+            Thread.sleep(Math.max(0, Math.min(millis, remaining)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
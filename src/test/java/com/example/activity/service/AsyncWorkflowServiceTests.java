@@ -0,0 +1,121 @@
+package com.example.activity.service;
+
+import com.example.activity.config.*;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 异步流程调用：当前用户的传递和数据库并发数
+ */
+class AsyncWorkflowServiceTests {
+
+    private AsyncWorkflowService service;
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.destroy();
+        }
+        SecurityContextHolder.clearContext();
+        org.activiti.engine.impl.identity.Authentication.setAuthenticatedUserId(null);
+    }
+
+    @Test
+    void dbConcurrencyLeavesConnectionsForBackgroundWorkers() {
+        service = service(0, 10, 6);
+        assertEquals(4, service.dbConcurrency());
+    }
+
+    @Test
+    void dbConcurrencyKeepsOnePermitWhenBackgroundWorkersUseWholePool() {
+        service = service(0, 10, 16);
+        assertEquals(1, service.dbConcurrency());
+    }
+
+    @Test
+    void dbConcurrencyIgnoresDeployerAndOnDemandWorkers() {
+        // 默认配置：异步任务执行器未启动、历史同步写入，部署、导出、批量审批和批量启动线程空闲时不占用连接
+        ConnectionPoolSizeCheck connectionPoolSizeCheck = new ConnectionPoolSizeCheck();
+        ReflectionTestUtils.setField(connectionPoolSizeCheck, "asyncExecutorProperties", new AsyncExecutorProperties());
+        ReflectionTestUtils.setField(connectionPoolSizeCheck, "asyncHistoryProperties", new AsyncHistoryProperties());
+        ReflectionTestUtils.setField(connectionPoolSizeCheck, "batchApprovalProperties", new BatchApprovalProperties());
+        ReflectionTestUtils.setField(connectionPoolSizeCheck, "bulkStartProperties", new BulkStartProperties());
+        ReflectionTestUtils.setField(connectionPoolSizeCheck, "historyExportThreads", 2);
+        assertEquals(0, connectionPoolSizeCheck.backgroundConnections());
+
+        service = service(0, 10, connectionPoolSizeCheck);
+        assertEquals(10, service.dbConcurrency());
+    }
+
+    @Test
+    void dbConcurrencyUsesConfiguredLimit() {
+        service = service(3, 10, 6);
+        assertEquals(3, service.dbConcurrency());
+    }
+
+    @Test
+    void runsAsCallerAuthenticationCapturedAtCallTime() throws Exception {
+        service = service(0, 10, 0);
+        SecurityContextHolder.getContext().setAuthentication(authentication("rose"));
+        org.activiti.engine.impl.identity.Authentication.setAuthenticatedUserId("rose");
+
+        CountDownLatch callerChanged = new CountDownLatch(1);
+        CompletableFuture<String> future = service.supplyAsCurrentUser(() -> {
+            callerChanged.await(10, TimeUnit.SECONDS);
+            return SecurityContextHolder.getContext().getAuthentication().getName() + "/"
+                    + org.activiti.engine.impl.identity.Authentication.getAuthenticatedUserId();
+        });
+        // 调用线程修改自己的context，不影响已提交的异步调用
+        SecurityContextHolder.getContext().setAuthentication(authentication("tom"));
+        callerChanged.countDown();
+        assertEquals("rose/rose", future.get(10, TimeUnit.SECONDS));
+
+        // 工作线程执行后恢复原来的身份，未登录的调用拿不到上一个调用的用户
+        SecurityContextHolder.clearContext();
+        org.activiti.engine.impl.identity.Authentication.setAuthenticatedUserId(null);
+        Authentication next = service.supplyAsCurrentUser(() -> SecurityContextHolder.getContext().getAuthentication())
+                .get(10, TimeUnit.SECONDS);
+        assertNull(next);
+    }
+
+    private static AsyncWorkflowService service(int maxDbConcurrency, int poolSize, int backgroundConnections) {
+        return service(maxDbConcurrency, poolSize, new ConnectionPoolSizeCheck() {
+            @Override
+            public int backgroundConnections() {
+                return backgroundConnections;
+            }
+        });
+    }
+
+    private static AsyncWorkflowService service(int maxDbConcurrency, int poolSize,
+                                                ConnectionPoolSizeCheck connectionPoolSizeCheck) {
+        AsyncWorkflowProperties properties = new AsyncWorkflowProperties();
+        properties.setThreads(1);
+        properties.setMaxDbConcurrency(maxDbConcurrency);
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setMaximumPoolSize(poolSize);
+
+        AsyncWorkflowService service = new AsyncWorkflowService();
+        ReflectionTestUtils.setField(service, "properties", properties);
+        ReflectionTestUtils.setField(service, "dataSource", dataSource);
+        ReflectionTestUtils.setField(service, "connectionPoolSizeCheck", connectionPoolSizeCheck);
+        service.init();
+        return service;
+    }
+
+    private static Authentication authentication(String username) {
+        return new UsernamePasswordAuthenticationToken(username, null, AuthorityUtils.createAuthorityList("ROLE_ACTIVITI_USER"));
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.activity.service;
+
+import com.example.activity.benchmark.H2Engine;
+import com.example.activity.dto.ClaimResult;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.TaskService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 任务拾取：指定任务时检查候选资格，拾取下一个任务时本分片没有可拾取的任务则从其他分片拾取
+ */
+class ClaimCoordinatorTests {
+
+    private static ConfigurableApplicationContext context;
+
+    private static ClaimCoordinator claimCoordinator;
+
+    private static RuntimeService runtimeService;
+
+    private static TaskService taskService;
+
+    @BeforeAll
+    static void start() {
+        context = H2Engine.start();
+        claimCoordinator = context.getBean(ClaimCoordinator.class);
+        runtimeService = context.getBean(RuntimeService.class);
+        taskService = context.getBean(TaskService.class);
+    }
+
+    @AfterAll
+    static void stop() {
+        context.close();
+    }
+
+    @Test
+    void claimChecksCandidates() {
+        String taskId = startApproval();
+
+        assertEquals(ClaimResult.Status.NOT_CANDIDATE, claimCoordinator.claim("jack", taskId).getStatus());
+        assertEquals(ClaimResult.Status.CLAIMED, claimCoordinator.claim("rose", taskId).getStatus());
+        assertEquals(ClaimResult.Status.ALREADY_CLAIMED, claimCoordinator.claim("tom", taskId).getStatus());
+        assertEquals(ClaimResult.Status.NOT_FOUND, claimCoordinator.claim("rose", "missing").getStatus());
+        taskService.complete(taskId);
+    }
+
+    @Test
+    void claimNextStealsFromOtherShards() {
+        String taskId = startApproval();
+        int otherShard = 1 - ClaimCoordinator.shard(taskId, 2);
+
+        ClaimResult result = claimCoordinator.claimNext("tom", "demo1", otherShard, 2);
+        assertEquals(ClaimResult.Status.CLAIMED, result.getStatus());
+        assertEquals(taskId, result.getTaskId());
+        assertEquals(ClaimResult.Status.NONE_AVAILABLE, claimCoordinator.claimNext("rose", "demo1", 0, 1).getStatus());
+        taskService.complete(taskId);
+    }
+
+    /**
+     * 启动demo1并完成员工申请，返回activitiTeam组的经理审批任务
+     */
+    private static String startApproval() {
+        String processInstanceId = runtimeService.startProcessInstanceByKey("demo1").getId();
+        taskService.complete(taskService.createTaskQuery().processInstanceId(processInstanceId).singleResult().getId());
+        return taskService.createTaskQuery().processInstanceId(processInstanceId).singleResult().getId();
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.activity.service;
+
+import com.example.activity.benchmark.H2Engine;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.TaskService;
+import org.activiti.engine.task.Task;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 待办计数：任务创建、拾取、完成后的增量更新，同一任务对一个用户只计算一次，以及对账修正与数据库不一致的计数
+ */
+class InboxCounterStoreTests {
+
+    private static ConfigurableApplicationContext context;
+
+    private static InboxCounterStore store;
+
+    private static RuntimeService runtimeService;
+
+    private static TaskService taskService;
+
+    @BeforeAll
+    static void start() {
+        context = H2Engine.start();
+        store = context.getBean(InboxCounterStore.class);
+        runtimeService = context.getBean(RuntimeService.class);
+        taskService = context.getBean(TaskService.class);
+    }
+
+    @AfterAll
+    static void stop() {
+        context.close();
+    }
+
+    @Test
+    void followsTaskLifecycle() {
+        int jack = store.countAssigned("jack");
+        int group = store.countForGroup("activitiTeam");
+        int rose = store.countForUser("rose");
+
+        String processInstanceId = runtimeService.startProcessInstanceByKey("demo1").getId();
+        assertEquals(jack + 1, store.countAssigned("jack"));
+
+        taskService.complete(currentTask(processInstanceId).getId());
+        assertEquals(jack, store.countAssigned("jack"));
+        assertEquals(group + 1, store.countForGroup("activitiTeam"));
+        assertEquals(rose + 1, store.countForUser("rose"));
+
+        String approvalId = currentTask(processInstanceId).getId();
+        // rose既是候选人又在候选组中，同一任务只计算一次
+        taskService.addCandidateUser(approvalId, "rose");
+        assertEquals(rose + 1, store.countForUser("rose"));
+
+        taskService.claim(approvalId, "rose");
+        assertEquals(group, store.countForGroup("activitiTeam"));
+        assertEquals(1, store.countAssigned("rose"));
+        assertEquals(rose + 1, store.countForUser("rose"));
+
+        taskService.complete(approvalId);
+        assertEquals(0, store.countAssigned("rose"));
+        assertEquals(rose, store.countForUser("rose"));
+        assertEquals(group, store.countForGroup("activitiTeam"));
+    }
+
+    @Test
+    void reconcileCorrectsDrift() {
+        int group = store.countForGroup("activitiTeam");
+        int tom = store.countAssigned("tom");
+
+        String processInstanceId = runtimeService.startProcessInstanceByKey("demo1").getId();
+        taskService.complete(currentTask(processInstanceId).getId());
+        String approvalId = currentTask(processInstanceId).getId();
+        assertEquals(group + 1, store.countForGroup("activitiTeam"));
+
+        // 绕过引擎直接修改办理人，不产生事件，计数与数据库不一致
+        context.getBean(JdbcTemplate.class).update("update ACT_RU_TASK set ASSIGNEE_ = ? where ID_ = ?", "tom", approvalId);
+        assertEquals(group + 1, store.countForGroup("activitiTeam"));
+        assertEquals(tom, store.countAssigned("tom"));
+
+        store.reconcile();
+        assertEquals(group, store.countForGroup("activitiTeam"));
+        assertEquals(tom + 1, store.countAssigned("tom"));
+
+        taskService.complete(approvalId);
+        assertEquals(tom, store.countAssigned("tom"));
+    }
+
+    @Test
+    void concurrentReconcilesDoNotInterfere() throws Exception {
+        int group = store.countForGroup("activitiTeam");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(executor.submit(store::reconcile));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(group, store.countForGroup("activitiTeam"));
+    }
+
+    private static Task currentTask(String processInstanceId) {
+        return taskService.createTaskQuery().processInstanceId(processInstanceId).singleResult();
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.activity.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 过期LRU缓存：加载期间被失效的结果不写入缓存
+ */
+class ExpiringLruCacheTests {
+
+    @Test
+    void discardsValueLoadedAcrossInvalidation() throws Exception {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10, 1, TimeUnit.HOURS);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch invalidated = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> future = executor.submit(() -> cache.computeIfAbsent("k", key -> {
+                loading.countDown();
+                try {
+                    invalidated.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "old";
+            }));
+            assertTrue(loading.await(10, TimeUnit.SECONDS));
+            cache.invalidate("k");
+            invalidated.countDown();
+
+            // 加载结果仍返回给调用方，但不写入缓存
+            assertEquals("old", future.get(10, TimeUnit.SECONDS));
+            assertNull(cache.get("k"));
+            assertEquals("new", cache.computeIfAbsent("k", key -> "new"));
+            assertEquals("new", cache.get("k"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void discardsValueLoadedAcrossInvalidateAll() throws Exception {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10, 1, TimeUnit.HOURS);
+        assertEquals("old", cache.computeIfAbsent("k", key -> {
+            cache.invalidateAll();
+            return "old";
+        }));
+        assertNull(cache.get("k"));
+
+        // 其他key的失效不影响本次加载
+        assertEquals("v", cache.computeIfAbsent("k", key -> {
+            cache.invalidate("other");
+            return "v";
+        }));
+        assertEquals("v", cache.get("k"));
+    }
+}